@@ -0,0 +1,220 @@
+/**
+ *
+ */
+package org.cfpm.queue.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.cfpm.queue.Queue;
+import org.nlogo.api.ExtensionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** JMH benchmarks for the hot paths of {@link Queue}: insertion and removal in steady state (constant queue length)
+ * and in bursts, the serve loop of a service station, the mean wait time and mean length reporters, and the String
+ * rendering and comparison used by queue:show and NetLogo's equality checks. Runs headless, without any NetLogo workspace.
+ *
+ * @author Ruth Meyer
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class QueueBenchmark {
+
+	/** Number of elements inserted (and then removed) at the same time in the burst benchmark. */
+	final static int BURST = 1000;
+
+	/** The object that is queued (the same one throughout, to measure the queue rather than the elements). */
+	final static Object ELEM = "wizard";
+
+	/** A queue that is filled up to the given size before each trial.
+	 */
+	@State(Scope.Thread)
+	public static class QueueState {
+
+		@Param({"FIFO", "LIFO"})
+		public String strategy;
+
+		@Param({"10", "1000", "100000", "10000000"})
+		public int size;
+
+		Queue queue;
+		double time;
+
+		@Setup(Level.Trial)
+		public void setUp() throws ExtensionException {
+			this.queue = new Queue(strategy.equals("LIFO") ? Queue.LIFO : Queue.FIFO);
+			this.time = 0.0;
+			for (int i = 0; i < size; i++) {
+				this.time += 1.0;
+				this.queue.enqueue(ELEM, this.time);
+			}
+		}
+	}
+
+	/** Two equal queues for rendering and comparison, which are linear in the queue length (so limited to smaller sizes).
+	 */
+	@State(Scope.Thread)
+	public static class RenderState {
+
+		@Param({"FIFO", "LIFO"})
+		public String strategy;
+
+		@Param({"10", "1000", "100000"})
+		public int size;
+
+		Queue queue;
+		Queue other;
+
+		@Setup(Level.Trial)
+		public void setUp() throws ExtensionException {
+			int s = strategy.equals("LIFO") ? Queue.LIFO : Queue.FIFO;
+			this.queue = new Queue(s);
+			this.other = new Queue(s);
+			for (int i = 0; i < size; i++) {
+				this.queue.enqueue(ELEM, i);
+				this.other.enqueue(ELEM, i);
+			}
+		}
+	}
+
+	/** A queue for rendering that changes before each invocation (one arrival and one departure, so the length stays
+	 * constant), so the rendering is not just taken from the queue's cache.
+	 */
+	@State(Scope.Thread)
+	public static class ChangingRenderState extends RenderState {
+
+		double time;
+
+		@Setup(Level.Invocation)
+		public void change() throws ExtensionException {
+			this.time = Math.max(this.time + 1.0, this.size);
+			this.queue.enqueue(ELEM, this.time);
+			this.queue.dequeue(this.time);
+		}
+	}
+
+	/** A service station with a few servers and a constant service time, kept in steady state.
+	 */
+	@State(Scope.Thread)
+	public static class StationState {
+
+		final static int SERVERS = 4;
+
+		Queue queue;
+		double time;
+		List<Object> completed = new ArrayList<Object>();
+		List<Object> started = new ArrayList<Object>();
+
+		@Setup(Level.Trial)
+		public void setUp() throws ExtensionException {
+			this.queue = new Queue(Queue.FIFO);
+			this.queue.setServers(SERVERS, 1.0, null);
+			this.time = 0.0;
+		}
+	}
+
+	/** One arrival and one departure at a time, so the queue length stays constant.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public Object steadyState(QueueState s) throws ExtensionException {
+		s.time += 1.0;
+		s.queue.enqueue(ELEM, s.time);
+		return s.queue.dequeue(s.time);
+	}
+
+	/** A burst of simultaneous arrivals, followed by the same number of departures.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(2 * BURST)
+	public void burst(QueueState s, Blackhole bh) throws ExtensionException {
+		s.time += 1.0;
+		for (int i = 0; i < BURST; i++) {
+			s.queue.enqueue(ELEM, s.time);
+		}
+		s.time += 1.0;
+		for (int i = 0; i < BURST; i++) {
+			bh.consume(s.queue.dequeue(s.time));
+		}
+	}
+
+	/** One arrival per server, followed by one call of serve (which completes and starts one service per server).
+	 */
+	@Benchmark
+	@OperationsPerInvocation(StationState.SERVERS)
+	public void serve(StationState s, Blackhole bh) throws ExtensionException {
+		s.time += 1.0;
+		for (int i = 0; i < StationState.SERVERS; i++) {
+			s.queue.enqueue(ELEM, s.time);
+		}
+		s.completed.clear();
+		s.started.clear();
+		s.queue.serve(s.time, null, s.completed, s.started);
+		bh.consume(s.completed);
+	}
+
+	@Benchmark
+	public double meanWaitTime(QueueState s) {
+		return s.queue.getMeanWaitTime();
+	}
+
+	@Benchmark
+	public double meanSize(QueueState s) {
+		return s.queue.getMeanSize();
+	}
+
+	@Benchmark
+	public String render(ChangingRenderState s) {
+		return s.queue.toString();
+	}
+
+	/** Rendering of an unchanged queue, i.e. a hit in its cache.
+	 */
+	@Benchmark
+	public String renderCached(RenderState s) {
+		return s.queue.toString();
+	}
+
+	@Benchmark
+	public boolean recursivelyEqual(RenderState s) {
+		return s.queue.recursivelyEqual(s.other);
+	}
+
+	/** Runs all queue benchmarks with the GC profiler, which reports the allocation rate next to the throughput.
+	 * Any JMH command line options (e.g. a benchmark name pattern, or -p size=1000) can be passed as arguments.
+	 */
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(commandLine).addProfiler(GCProfiler.class);
+		if (commandLine.getIncludes().isEmpty()) {
+			options.include(QueueBenchmark.class.getSimpleName());
+		}
+		new Runner(options.build()).run();
+	}
+
+}
@@ -0,0 +1,111 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.MersenneTwisterFast;
+
+/** Admission control of a queue with limited capacity: the maximum number of elements, the drop policy that says
+ * what happens to arrivals when the queue is full (see {@link Queue#REJECT} etc.) and the state of random early
+ * detection. Dropping an element that is already in the queue is left to the queue, which owns the backing store.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class AdmissionControl {
+
+	// maximum number of elements and what happens to arrivals when the queue is full
+	int capacity;
+	int dropPolicy;
+	// random early detection: arrivals are dropped with a probability rising up to maxDropProbability while the
+	// (exponentially weighted moving) average length is between the two thresholds; numSinceDrop counts the
+	// arrivals admitted since the last drop, rng is NetLogo's random number generator (set by the primitives that insert)
+	double minThreshold;
+	double maxThreshold;
+	double maxDropProbability;
+	double averageWeight;
+	double averageLength;
+	int numSinceDrop;
+	MersenneTwisterFast rng;
+
+	/** Random early detection starts with thresholds of a quarter and three quarters of the capacity, a max drop
+	 * probability of 0.1 and a weight of 0.002.
+	 */
+	AdmissionControl(int capacity, int dropPolicy) {
+		this.capacity = capacity;
+		this.dropPolicy = dropPolicy;
+		this.minThreshold = capacity / 4.0;
+		this.maxThreshold = 3 * capacity / 4.0;
+		this.maxDropProbability = 0.1;
+		this.averageWeight = 0.002;
+		this.averageLength = 0;
+		this.numSinceDrop = -1;
+	}
+
+	/** Sets the parameters of random early detection (see {@link Queue#setRed(double, double, double, double)}).
+	 */
+	void setRed(double minThreshold, double maxThreshold, double maxDropProbability, double averageWeight)
+			throws ExtensionException {
+		if (this.dropPolicy != Queue.RED) {
+			throw new ExtensionException("this queue does not use random early detection");
+		}
+		this.minThreshold = minThreshold;
+		this.maxThreshold = maxThreshold;
+		this.maxDropProbability = maxDropProbability;
+		this.averageWeight = averageWeight;
+	}
+
+	/** Updates the average length with the given current length and decides whether an arriving element is dropped
+	 * by random early detection (S. Floyd and V. Jacobson, 1993): never while the average is below the min threshold,
+	 * always once it has reached the max threshold (or the queue is full), and in between with a probability that
+	 * grows with the average and with the number of arrivals admitted since the last drop, which spreads the drops
+	 * out evenly.
+	 */
+	boolean dropEarly(int length) throws ExtensionException {
+		this.averageLength += this.averageWeight * (length - this.averageLength);
+		boolean drop;
+		if (length >= this.capacity || this.averageLength >= this.maxThreshold) {
+			drop = true;
+		}
+		else if (this.averageLength < this.minThreshold) {
+			this.numSinceDrop = -1;
+			return false;
+		}
+		else {
+			this.numSinceDrop++;
+			double p = this.maxDropProbability * (this.averageLength - this.minThreshold) / (this.maxThreshold - this.minThreshold);
+			if (this.rng == null) {
+				throw new ExtensionException("random early detection needs a random number generator");
+			}
+			// drop with probability p / (1 - numSinceDrop * p)
+			drop = this.numSinceDrop * p >= 1 || this.rng.nextDouble() * (1 - this.numSinceDrop * p) < p;
+		}
+		if (drop) {
+			this.numSinceDrop = 0;
+		}
+		return drop;
+	}
+
+	/** Appends the "capacity" line of an exported queue to the given buffer.
+	 */
+	void exportState(StringBuilder buf) {
+		buf.append("\"capacity\",").append(this.capacity).append(',').append(this.dropPolicy).append(',')
+		   .append(this.minThreshold).append(',').append(this.maxThreshold).append(',').append(this.maxDropProbability)
+		   .append(',').append(this.averageWeight).append(',').append(this.averageLength).append(',')
+		   .append(this.numSinceDrop).append('\n');
+	}
+
+	/** Restores the state of random early detection from the "capacity" line of an exported queue (the capacity and
+	 * drop policy have already been set from it).
+	 */
+	void importState(String[] line) {
+		this.minThreshold = Double.parseDouble(line[3]);
+		this.maxThreshold = Double.parseDouble(line[4]);
+		this.maxDropProbability = Double.parseDouble(line[5]);
+		this.averageWeight = Double.parseDouble(line[6]);
+		this.averageLength = Double.parseDouble(line[7]);
+		this.numSinceDrop = Integer.parseInt(line[8]);
+	}
+
+}
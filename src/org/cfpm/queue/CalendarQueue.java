@@ -0,0 +1,446 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+
+/** A calendar queue (R. Brown, 1988) holding the events of an event list, ordered by their due time.
+ * Events with equal due times are kept in the order of insertion. Insertion and removal of the next
+ * event take O(1) amortised time, as the number of buckets and their width are adapted to the size
+ * and spread of the event list.
+ * <p>
+ * Events are stored in parallel arrays indexed by slot number; each bucket is a sorted singly-linked
+ * list of slots, threaded through the array {@link #next}. Free slots form a list of their own, so
+ * inserting and removing events does not allocate any objects.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class CalendarQueue {
+
+	/** Initial (and minimum) number of buckets (has to be a power of two). */
+	final static int MIN_BUCKETS = 16;
+	/** Maximum number of events sampled to estimate the bucket width after a resize. */
+	final static int WIDTH_SAMPLE_SIZE = 25;
+
+	// event slots
+	Object[] elems;
+	double[] dues;
+	double[] times;
+	long[] seqNos;
+	// class of each event (null if no class tags are used)
+	int[] classIds;
+	int[] next;
+	int freeList;
+	int size;
+	long nextSeqNo;
+	// the calendar: buckets[i] is the first slot in bucket i (or -1 if the bucket is empty)
+	int[] buckets;
+	double width;
+	// the bucket and number of the current "day" where the search for the next event starts (day d covers the due 
+	// times from d * width up to (d + 1) * width and falls into bucket d mod buckets.length)
+	int lastBucket;
+	long lastDay;
+	// due time of the last removed event (lower bound for all events in the calendar)
+	double lastDue;
+	// cached position of the next event (or -1 if it has to be located); the calendar only moves on
+	// to this position when the event is actually removed
+	int firstSlot;
+	int firstBucket;
+	long firstDay;
+
+	CalendarQueue() {
+		this(Queue.INITIAL_CAPACITY);
+	}
+	
+	/** Creates an empty calendar with slots for the given number of events (has to be a power of two).
+	 */
+	CalendarQueue(int numSlots) {
+		this.elems = new Object[numSlots];
+		this.dues = new double[numSlots];
+		this.times = new double[numSlots];
+		this.seqNos = new long[numSlots];
+		this.next = new int[numSlots];
+		linkFreeSlots(0);
+		this.size = 0;
+		this.nextSeqNo = 0;
+		this.buckets = new int[MIN_BUCKETS];
+		Arrays.fill(this.buckets, -1);
+		this.width = 1.0;
+		this.lastDue = 0.0;
+		setClock(this.lastDue);
+		this.firstSlot = -1;
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	/** Inserts an event (of the given class) with the given due time, which was scheduled at the given time, and returns
+	 * its insertion number.
+	 */
+	long insert(Object elem, double due, double time, int classId) {
+		long seqNo = this.nextSeqNo++;
+		insert(elem, due, time, seqNo, classId);
+		return seqNo;
+	}
+
+	/** Inserts an event with the given due time and insertion number (e.g. when restoring an exported event list).
+	 */
+	void insert(Object elem, double due, double time, long seqNo, int classId) {
+		if (this.freeList == -1) {
+			growSlots();
+		}
+		int slot = this.freeList;
+		this.freeList = this.next[slot];
+		this.elems[slot] = elem;
+		this.dues[slot] = due;
+		this.times[slot] = time;
+		this.seqNos[slot] = seqNo;
+		if (this.classIds != null) {
+			this.classIds[slot] = classId;
+		}
+		this.nextSeqNo = Math.max(this.nextSeqNo, seqNo + 1);
+		if (due < this.lastDue) {
+			// event lies before the current position of the calendar: move the calendar back
+			this.lastDue = due;
+			setClock(due);
+		}
+		insertIntoBucket(slot);
+		this.size++;
+		this.firstSlot = -1;
+		if (this.size > 2 * this.buckets.length) {
+			resize(2 * this.buckets.length);
+		}
+	}
+
+	/** Returns the due time of the next event. Must not be called on an empty calendar.
+	 */
+	double firstDue() {
+		return this.dues[locateFirst()];
+	}
+
+	/** Returns the object of the next event. Must not be called on an empty calendar.
+	 */
+	Object firstElem() {
+		return this.elems[locateFirst()];
+	}
+
+	/** Returns the insertion number of the next event. Must not be called on an empty calendar.
+	 */
+	long firstSeqNo() {
+		return this.seqNos[locateFirst()];
+	}
+
+	/** Returns the class of the next event. Must not be called on an empty calendar that keeps classes.
+	 */
+	int firstClassId() {
+		return this.classIds[locateFirst()];
+	}
+
+	/** Returns the class of the event with the given insertion number (0 if there is none). Takes O(n).
+	 */
+	int classOf(long seqNo) {
+		for (int b = 0; b < this.buckets.length; b++) {
+			for (int slot = this.buckets[b]; slot != -1; slot = this.next[slot]) {
+				if (this.seqNos[slot] == seqNo) {
+					return this.classIds[slot];
+				}
+			}
+		}
+		return 0;
+	}
+
+	/** Returns the scheduling time of the next event. Must not be called on an empty calendar.
+	 */
+	double firstTime() {
+		return this.times[locateFirst()];
+	}
+
+	/** Removes the next event and returns its object. Must not be called on an empty calendar.
+	 */
+	Object removeFirst() {
+		int slot = locateFirst();
+		Object elem = this.elems[slot];
+		this.buckets[this.firstBucket] = this.next[slot];
+		this.lastDue = this.dues[slot];
+		this.lastBucket = this.firstBucket;
+		this.lastDay = this.firstDay;
+		freeSlot(slot);
+		return elem;
+	}
+	
+	/** Returns the slot of the event that is due last (of those due at the same time, the one scheduled last), 
+	 * leaving out the events with the given insertion numbers (if not null). Takes O(n). Must not be called if 
+	 * there is no such event.
+	 */
+	int lastSlot(Set<Long> excluded) {
+		int last = -1;
+		for (int b = 0; b < this.buckets.length; b++) {
+			for (int slot = this.buckets[b]; slot != -1; slot = this.next[slot]) {
+				if ((last == -1 || before(last, slot)) && (excluded == null || ! excluded.contains(this.seqNos[slot]))) {
+					last = slot;
+				}
+			}
+		}
+		return last;
+	}
+	
+	/** Removes the event in the given slot (without moving the calendar on).
+	 */
+	void remove(int slot) {
+		int b = bucketOf(this.dues[slot]);
+		if (this.buckets[b] == slot) {
+			this.buckets[b] = this.next[slot];
+		}
+		else {
+			int prev = this.buckets[b];
+			while (this.next[prev] != slot) {
+				prev = this.next[prev];
+			}
+			this.next[prev] = this.next[slot];
+		}
+		freeSlot(slot);
+	}
+	
+	/** Puts the given (unlinked) slot back on the free list, shrinking the calendar if it has become sparse.
+	 */
+	private void freeSlot(int slot) {
+		this.elems[slot] = null;
+		this.next[slot] = this.freeList;
+		this.freeList = slot;
+		this.size--;
+		this.firstSlot = -1;
+		if (this.size < this.buckets.length / 2 && this.buckets.length > MIN_BUCKETS) {
+			resize(this.buckets.length / 2);
+		}
+	}
+
+	/** Returns views of all events in the order of their due times, leaving out the events with the given
+	 * insertion numbers (if not null).
+	 */
+	QElem[] toArray(Set<Long> excluded) {
+		Integer[] sorted = new Integer[this.size];
+		int n = 0;
+		for (int b = 0; b < this.buckets.length; b++) {
+			for (int slot = this.buckets[b]; slot != -1; slot = this.next[slot]) {
+				if (excluded == null || ! excluded.contains(this.seqNos[slot])) {
+					sorted[n++] = slot;
+				}
+			}
+		}
+		sorted = Arrays.copyOf(sorted, n);
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return before(a, b) ? -1 : (before(b, a) ? 1 : 0);
+			}
+		});
+		QElem[] result = new QElem[n];
+		for (int i = 0; i < n; i++) {
+			result[i] = new QElem(this.elems[sorted[i]], this.times[sorted[i]]);
+		}
+		return result;
+	}
+
+	/** Returns the position of the given element's event that is due first (0 being the next event), not counting
+	 * the events with the given insertion numbers (if not null). Takes O(n).
+	 */
+	int position(MemberIndex.Occurrences o, Set<Long> excluded) {
+		int first = -1;
+		for (int b = 0; b < this.buckets.length; b++) {
+			for (int slot = this.buckets[b]; slot != -1; slot = this.next[slot]) {
+				if (o.contains(this.seqNos[slot]) && (first == -1 || before(slot, first))) {
+					first = slot;
+				}
+			}
+		}
+		int pos = 0;
+		for (int b = 0; b < this.buckets.length; b++) {
+			for (int slot = this.buckets[b]; slot != -1; slot = this.next[slot]) {
+				if (before(slot, first) && (excluded == null || ! excluded.contains(this.seqNos[slot]))) {
+					pos++;
+				}
+			}
+		}
+		return pos;
+	}
+
+	/** Returns true if the event in slot a is due before the one in slot b (or at the same time, but scheduled earlier).
+	 */
+	private boolean before(int a, int b) {
+		if (this.dues[a] < this.dues[b]) return true;
+		if (this.dues[a] > this.dues[b]) return false;
+		return this.seqNos[a] < this.seqNos[b];
+	}
+
+	private long dayOf(double due) {
+		return (long)Math.floor(due / this.width);
+	}
+
+	private int bucketOf(double due) {
+		return (int)(dayOf(due) & (this.buckets.length - 1));
+	}
+
+	/** Positions the calendar at the bucket containing the given due time.
+	 */
+	private void setClock(double due) {
+		this.lastDay = dayOf(due);
+		this.lastBucket = (int)(this.lastDay & (this.buckets.length - 1));
+	}
+
+	private void insertIntoBucket(int slot) {
+		int b = bucketOf(this.dues[slot]);
+		int prev = -1;
+		int cur = this.buckets[b];
+		while (cur != -1 && before(cur, slot)) {
+			prev = cur;
+			cur = this.next[cur];
+		}
+		this.next[slot] = cur;
+		if (prev == -1) {
+			this.buckets[b] = slot;
+		}
+		else {
+			this.next[prev] = slot;
+		}
+	}
+
+	/** Finds the slot of the next event, scanning the calendar from its current position for at most one "year";
+	 * falls back to a direct search of all bucket heads if all events lie further in the future.
+	 */
+	private int locateFirst() {
+		if (this.firstSlot != -1) {
+			return this.firstSlot;
+		}
+		int mask = this.buckets.length - 1;
+		int b = this.lastBucket;
+		long day = this.lastDay;
+		for (int n = 0; n < this.buckets.length; n++) {
+			int slot = this.buckets[b];
+			// compare day numbers rather than due times, so that events are found in exactly the bucket 
+			// bucketOf() has put them in (regardless of rounding)
+			if (slot != -1 && dayOf(this.dues[slot]) <= day) {
+				this.firstSlot = slot;
+				this.firstDay = day;
+				this.firstBucket = b;
+				return slot;
+			}
+			b = (b + 1) & mask;
+			day++;
+		}
+		// direct search
+		int best = -1;
+		for (b = 0; b < this.buckets.length; b++) {
+			int slot = this.buckets[b];
+			if (slot != -1 && (best == -1 || before(slot, this.buckets[best]))) {
+				best = b;
+			}
+		}
+		this.firstSlot = this.buckets[best];
+		this.firstBucket = best;
+		this.firstDay = dayOf(this.dues[this.firstSlot]);
+		return this.firstSlot;
+	}
+
+	private void growSlots() {
+		int oldCapacity = this.elems.length;
+		int newCapacity = oldCapacity << 1;
+		this.elems = Arrays.copyOf(this.elems, newCapacity);
+		this.dues = Arrays.copyOf(this.dues, newCapacity);
+		this.times = Arrays.copyOf(this.times, newCapacity);
+		this.seqNos = Arrays.copyOf(this.seqNos, newCapacity);
+		if (this.classIds != null) {
+			this.classIds = Arrays.copyOf(this.classIds, newCapacity);
+		}
+		this.next = Arrays.copyOf(this.next, newCapacity);
+		linkFreeSlots(oldCapacity);
+	}
+
+	private void linkFreeSlots(int from) {
+		for (int i = from; i < this.next.length - 1; i++) {
+			this.next[i] = i + 1;
+		}
+		this.next[this.next.length - 1] = -1;
+		this.freeList = from;
+	}
+
+	/** Rebuilds the calendar with the given number of buckets and a bucket width estimated from the
+	 * average separation of the next few events.
+	 */
+	private void resize(int numBuckets) {
+		double newWidth = estimateWidth();
+		int[] oldBuckets = this.buckets;
+		this.buckets = new int[numBuckets];
+		Arrays.fill(this.buckets, -1);
+		if (newWidth > 0) {
+			this.width = newWidth;
+		}
+		for (int b = 0; b < oldBuckets.length; b++) {
+			int slot = oldBuckets[b];
+			while (slot != -1) {
+				int following = this.next[slot];
+				insertIntoBucket(slot);
+				slot = following;
+			}
+		}
+		setClock(this.lastDue);
+		this.firstSlot = -1;
+	}
+
+	/** Estimates a good bucket width as three times the average separation of the earliest events,
+	 * ignoring separations that are more than twice the average. Returns 0 if no estimate is possible.
+	 */
+	private double estimateWidth() {
+		int sampleSize = Math.min(this.size, WIDTH_SAMPLE_SIZE);
+		if (sampleSize < 2) {
+			return 0;
+		}
+		// keep the smallest due times in a bounded max-heap
+		double[] sample = new double[sampleSize];
+		int n = 0;
+		for (int b = 0; b < this.buckets.length; b++) {
+			for (int slot = this.buckets[b]; slot != -1; slot = this.next[slot]) {
+				double due = this.dues[slot];
+				if (n < sampleSize) {
+					int i = n++;
+					while (i > 0 && sample[(i - 1) >>> 1] < due) {
+						sample[i] = sample[(i - 1) >>> 1];
+						i = (i - 1) >>> 1;
+					}
+					sample[i] = due;
+				}
+				else if (due < sample[0]) {
+					int i = 0;
+					while (true) {
+						int child = (i << 1) + 1;
+						if (child >= n) break;
+						if (child + 1 < n && sample[child + 1] > sample[child]) child++;
+						if (sample[child] <= due) break;
+						sample[i] = sample[child];
+						i = child;
+					}
+					sample[i] = due;
+				}
+			}
+		}
+		Arrays.sort(sample);
+		double average = (sample[sampleSize - 1] - sample[0]) / (sampleSize - 1);
+		double total = 0;
+		int num = 0;
+		for (int i = 1; i < sampleSize; i++) {
+			double separation = sample[i] - sample[i - 1];
+			if (separation <= 2 * average) {
+				total += separation;
+				num++;
+			}
+		}
+		if (num == 0 || total <= 0) {
+			return 0;
+		}
+		return 3 * total / num;
+	}
+
+}
@@ -0,0 +1,104 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import java.util.ArrayDeque;
+
+import org.nlogo.api.AnonymousCommand;
+import org.nlogo.api.Context;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+
+/** The anonymous commands registered on a queue to be run when its length crosses a threshold, when it runs empty
+ * or when an element leaves after waiting longer than a threshold. The queue reports every change in its length and
+ * every departure; a crossing only queues the command with its inputs, as the queue has no NetLogo context. The
+ * pending commands are run by the primitive that changed the queue, once the change is complete, in the order of
+ * the crossings (see {@link Queue#runCallbacks(Context)}).
+ *
+ * @author Ruth Meyer
+ *
+ */
+class Callbacks {
+
+	// commands (null if not registered) and their thresholds
+	AnonymousCommand lengthAbove;
+	int lengthAboveThreshold;
+	AnonymousCommand lengthBelow;
+	int lengthBelowThreshold;
+	AnonymousCommand empty;
+	AnonymousCommand waitAbove;
+	double waitAboveThreshold;
+	// length of the queue after the last change
+	int length;
+	// commands to be run, each followed by its inputs
+	ArrayDeque<Object[]> pending;
+	// true while the pending commands are run (commands that change the queue must not run them again)
+	boolean running;
+
+	Callbacks(int length) {
+		this.length = length;
+		this.pending = new ArrayDeque<Object[]>();
+	}
+
+	/** Returns true if no command is registered.
+	 */
+	boolean isEmpty() {
+		return this.lengthAbove == null && this.lengthBelow == null && this.empty == null && this.waitAbove == null;
+	}
+
+	/** Notes that the length of the given queue has changed to the given value, and queues the commands whose
+	 * threshold has been crossed.
+	 */
+	void lengthChanged(Queue queue, int newLength) {
+		int oldLength = this.length;
+		this.length = newLength;
+		if (this.lengthAbove != null && oldLength <= this.lengthAboveThreshold && newLength > this.lengthAboveThreshold) {
+			this.pending.addLast(new Object[]{this.lengthAbove, queue});
+		}
+		if (this.lengthBelow != null && oldLength >= this.lengthBelowThreshold && newLength < this.lengthBelowThreshold) {
+			this.pending.addLast(new Object[]{this.lengthBelow, queue});
+		}
+		if (this.empty != null && oldLength > 0 && newLength == 0) {
+			this.pending.addLast(new Object[]{this.empty, queue});
+		}
+	}
+
+	/** Notes that the given element has left the queue after the given wait time.
+	 */
+	void departed(Object elem, double waitTime) {
+		if (this.waitAbove != null && waitTime > this.waitAboveThreshold) {
+			this.pending.addLast(new Object[]{this.waitAbove, elem, Double.valueOf(waitTime)});
+		}
+	}
+
+	/** Runs the pending commands in the given context, including those queued while running them.
+	 */
+	void run(Context context) throws ExtensionException {
+		if (this.running) {
+			return;
+		}
+		this.running = true;
+		boolean completed = false;
+		try {
+			while (! this.pending.isEmpty()) {
+				Object[] call = this.pending.removeFirst();
+				Object[] inputs = new Object[call.length - 1];
+				System.arraycopy(call, 1, inputs, 0, inputs.length);
+				((AnonymousCommand)call[0]).perform(context, inputs);
+			}
+			completed = true;
+		}
+		catch (LogoException e) {
+			throw new ExtensionException(e.getMessage());
+		}
+		finally {
+			this.running = false;
+			if (! completed) {
+				// an error stops the run: the remaining commands are dropped
+				this.pending.clear();
+			}
+		}
+	}
+
+}
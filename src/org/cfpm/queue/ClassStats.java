@@ -0,0 +1,156 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import java.util.Arrays;
+
+/** Statistics per class of a multi-class queue, kept in primitive arrays indexed by class id (which grow as needed):
+ * the number of arrivals, of departures and of elements that left without being served (cancelled or dropped),
+ * the wait times of the departures and the time-weighted length. As the length of one class only changes when one
+ * of its elements arrives or leaves, each class accumulates its time-weighted length separately, from the time of
+ * its own last change, so an arrival or departure takes O(1) regardless of the number of classes.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class ClassStats {
+
+	long[] numArrivals;
+	long[] numDepartures;
+	long[] numLost;
+	double[] totalWaitTime;
+	double[] minWaitTime;
+	double[] maxWaitTime;
+	// current length and sum of the insertion times of the elements currently in the queue
+	int[] length;
+	double[] sumOfTimes;
+	// time-weighted length, accumulated up to the time of the class's last change
+	double[] totalTimeWeightedLength;
+	double[] lastChange;
+	double startTime;
+
+	ClassStats(double startTime) {
+		this.numArrivals = new long[0];
+		this.numDepartures = new long[0];
+		this.numLost = new long[0];
+		this.totalWaitTime = new double[0];
+		this.minWaitTime = new double[0];
+		this.maxWaitTime = new double[0];
+		this.length = new int[0];
+		this.sumOfTimes = new double[0];
+		this.totalTimeWeightedLength = new double[0];
+		this.lastChange = new double[0];
+		this.startTime = startTime;
+	}
+
+	int numClasses() {
+		return this.length.length;
+	}
+
+	/** Resets all statistics at the given time. The elements currently in the queue stay where they are.
+	 */
+	void reset(double currentTime) {
+		Arrays.fill(this.numArrivals, 0);
+		Arrays.fill(this.numDepartures, 0);
+		Arrays.fill(this.numLost, 0);
+		Arrays.fill(this.totalWaitTime, 0);
+		Arrays.fill(this.minWaitTime, Double.MAX_VALUE);
+		Arrays.fill(this.maxWaitTime, 0);
+		Arrays.fill(this.totalTimeWeightedLength, 0);
+		Arrays.fill(this.lastChange, currentTime);
+		this.startTime = currentTime;
+	}
+
+	/** Records the arrival of an element of the given class at the specified time.
+	 */
+	void arrive(int classId, double currentTime) {
+		if (classId >= this.length.length) {
+			grow(classId + 1);
+		}
+		advance(classId, currentTime);
+		this.length[classId]++;
+		this.numArrivals[classId]++;
+		this.sumOfTimes[classId] += currentTime;
+	}
+
+	/** Records the departure (after service) of an element of the given class that was inserted at the given time.
+	 */
+	void depart(int classId, double insertionTime, double currentTime) {
+		advance(classId, currentTime);
+		this.length[classId]--;
+		this.sumOfTimes[classId] -= insertionTime;
+		double waitTime = currentTime - insertionTime;
+		this.numDepartures[classId]++;
+		this.totalWaitTime[classId] += waitTime;
+		if (waitTime > this.maxWaitTime[classId]) {
+			this.maxWaitTime[classId] = waitTime;
+		}
+		if (waitTime < this.minWaitTime[classId]) {
+			this.minWaitTime[classId] = waitTime;
+		}
+	}
+
+	/** Records that an element of the given class, inserted at the given time, has left without being served.
+	 */
+	void leave(int classId, double insertionTime, double currentTime) {
+		advance(classId, currentTime);
+		this.length[classId]--;
+		this.sumOfTimes[classId] -= insertionTime;
+		this.numLost[classId]++;
+	}
+
+	/** Returns the statistics of the given class up to the specified time (which must not lie before the last change):
+	 * number of arrivals, number of departures, mean wait time (including the elements still waiting, but not those
+	 * that left without being served), min and max wait time of the departures, and mean length.
+	 */
+	double[] get(int classId, double currentTime) {
+		if (classId >= this.length.length) {
+			return new double[6];
+		}
+		long numWaiting = this.numArrivals[classId] - this.numLost[classId];
+		double meanWaitTime = 0.0;
+		if (numWaiting > 0) {
+			double waiting = this.length[classId] * currentTime - this.sumOfTimes[classId];
+			meanWaitTime = (this.totalWaitTime[classId] + waiting) / numWaiting;
+		}
+		double minWaitTime = (this.numDepartures[classId] == 0) ? 0.0 : this.minWaitTime[classId];
+		double duration = currentTime - this.startTime;
+		double meanLength = 0.0;
+		if (duration > 0) {
+			meanLength = (this.totalTimeWeightedLength[classId]
+					+ (currentTime - this.lastChange[classId]) * this.length[classId]) / duration;
+		}
+		return new double[]{this.numArrivals[classId], this.numDepartures[classId], meanWaitTime, minWaitTime,
+				this.maxWaitTime[classId], meanLength};
+	}
+
+	/** Accumulates the time-weighted length of the given class up to the specified time.
+	 */
+	private void advance(int classId, double currentTime) {
+		this.totalTimeWeightedLength[classId] += (currentTime - this.lastChange[classId]) * this.length[classId];
+		this.lastChange[classId] = currentTime;
+	}
+
+	/** Makes room for the given number of classes.
+	 */
+	void grow(int numClasses) {
+		int oldNumClasses = this.length.length;
+		if (numClasses <= oldNumClasses) {
+			return;
+		}
+		this.numArrivals = Arrays.copyOf(this.numArrivals, numClasses);
+		this.numDepartures = Arrays.copyOf(this.numDepartures, numClasses);
+		this.numLost = Arrays.copyOf(this.numLost, numClasses);
+		this.totalWaitTime = Arrays.copyOf(this.totalWaitTime, numClasses);
+		this.minWaitTime = Arrays.copyOf(this.minWaitTime, numClasses);
+		this.maxWaitTime = Arrays.copyOf(this.maxWaitTime, numClasses);
+		this.length = Arrays.copyOf(this.length, numClasses);
+		this.sumOfTimes = Arrays.copyOf(this.sumOfTimes, numClasses);
+		this.totalTimeWeightedLength = Arrays.copyOf(this.totalTimeWeightedLength, numClasses);
+		this.lastChange = Arrays.copyOf(this.lastChange, numClasses);
+		Arrays.fill(this.minWaitTime, oldNumClasses, numClasses, Double.MAX_VALUE);
+		Arrays.fill(this.lastChange, oldNumClasses, numClasses, this.startTime);
+	}
+
+}
@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/** The deadlines of the elements of a queue that have a limited patience: a binary min-heap of pairs of deadline 
+ * and handle, so the element whose patience runs out first (or, for equal deadlines, which was inserted first) 
+ * is always at index 0. Entries are not removed when 
+ * their element is served or cancelled before its deadline; the queue skips them when they come up (and drops them
+ * all at once via {@link #retain(Map)} when they become too many).
+ *
+ * @author Ruth Meyer
+ *
+ */
+class DeadlineHeap {
+
+	double[] deadlines;
+	long[] handles;
+	int size;
+
+	DeadlineHeap() {
+		this.deadlines = new double[Queue.INITIAL_CAPACITY];
+		this.handles = new long[Queue.INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	/** Adds the given deadline for the element with the given handle.
+	 */
+	void add(double deadline, long handle) {
+		if (this.size == this.deadlines.length) {
+			this.deadlines = Arrays.copyOf(this.deadlines, 2 * this.size);
+			this.handles = Arrays.copyOf(this.handles, 2 * this.size);
+		}
+		// add at the bottom of the heap and restore the heap property
+		int i = this.size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (! before(deadline, handle, parent)) break;
+			this.deadlines[i] = this.deadlines[parent];
+			this.handles[i] = this.handles[parent];
+			i = parent;
+		}
+		this.deadlines[i] = deadline;
+		this.handles[i] = handle;
+	}
+
+	/** Returns the earliest deadline. Must not be called on an empty heap.
+	 */
+	double firstDeadline() {
+		return this.deadlines[0];
+	}
+
+	/** Removes the entry with the earliest deadline and returns its handle. Must not be called on an empty heap.
+	 */
+	long removeFirst() {
+		long handle = this.handles[0];
+		int last = --this.size;
+		if (last > 0) {
+			siftDown(0, this.deadlines[last], this.handles[last]);
+		}
+		return handle;
+	}
+
+	/** Drops all entries whose handles are not among the given ones, rebuilding the heap in O(n).
+	 */
+	void retain(Map<Long, ?> live) {
+		int n = 0;
+		for (int i = 0; i < this.size; i++) {
+			if (live.containsKey(this.handles[i])) {
+				this.deadlines[n] = this.deadlines[i];
+				this.handles[n] = this.handles[i];
+				n++;
+			}
+		}
+		this.size = n;
+		for (int i = (n >>> 1) - 1; i >= 0; i--) {
+			siftDown(i, this.deadlines[i], this.handles[i]);
+		}
+	}
+
+	/** Returns true if an entry with the given deadline and handle comes before the entry at heap index i.
+	 */
+	private boolean before(double deadline, long handle, int i) {
+		return before(deadline, handle, this.deadlines[i], this.handles[i]);
+	}
+
+	private static boolean before(double deadline, long handle, double otherDeadline, long otherHandle) {
+		if (deadline < otherDeadline) return true;
+		if (deadline > otherDeadline) return false;
+		return handle < otherHandle;
+	}
+
+	/** Moves the given entry down from index i (whose entry is considered a hole) to restore the heap property.
+	 */
+	private void siftDown(int i, double deadline, long handle) {
+		int half = this.size >>> 1;
+		while (i < half) {
+			int child = (i << 1) + 1;
+			if (child + 1 < this.size && before(this.deadlines[child + 1], this.handles[child + 1], child)) child++;
+			if (! before(this.deadlines[child], this.handles[child], deadline, handle)) break;
+			this.deadlines[i] = this.deadlines[child];
+			this.handles[i] = this.handles[child];
+			i = child;
+		}
+		this.deadlines[i] = deadline;
+		this.handles[i] = handle;
+	}
+
+}
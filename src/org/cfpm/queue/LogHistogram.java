@@ -0,0 +1,189 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+/** A streaming histogram of non-negative values with logarithmically sized buckets (similar to an HDR histogram),
+ * used to estimate quantiles of the wait time without storing individual values. Each power of two is divided
+ * into {@link #SUB_BUCKETS} linear sub-buckets, so every estimate is within about 1% of the true value.
+ * The bucket array is allocated on demand and only grows to cover the range of recorded values, up to
+ * {@link #MAX_OCTAVES} powers of two; values more than that many powers of two below the largest value are
+ * counted in the lowest bucket. Memory is therefore bounded, regardless of the number of recorded values.
+ * <p>
+ * Histograms are mergeable: the counts of another histogram can be added with {@link #merge(LogHistogram)}.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class LogHistogram {
+
+	final static int SUB_BITS = 6;
+	final static int SUB_BUCKETS = 1 << SUB_BITS;
+	final static int INITIAL_OCTAVES = 8;
+	final static int MAX_OCTAVES = 64;
+
+	// counts[(e - minExponent) * SUB_BUCKETS + s] counts values in [2^e * (1 + s/SUB_BUCKETS), 2^e * (1 + (s+1)/SUB_BUCKETS))
+	long[] counts;
+	int minExponent;
+	// values <= 0 (and values too small to be normalised doubles)
+	long zeroCount;
+	long totalCount;
+	double min;
+	double max;
+
+	LogHistogram() {
+		reset();
+	}
+
+	void reset() {
+		this.counts = null;
+		this.minExponent = 0;
+		this.zeroCount = 0;
+		this.totalCount = 0;
+		this.min = Double.MAX_VALUE;
+		this.max = 0;
+	}
+
+	long getTotalCount() {
+		return this.totalCount;
+	}
+
+	void record(double value) {
+		recordCount(value, 1);
+	}
+
+	private void recordCount(double value, long count) {
+		this.totalCount += count;
+		if (value < this.min) this.min = value;
+		if (value > this.max) this.max = value;
+		if (! (value >= Double.MIN_NORMAL)) {
+			this.zeroCount += count;
+			return;
+		}
+		int exponent = Math.getExponent(value);
+		cover(exponent);
+		if (exponent < this.minExponent) {
+			// folded into the lowest bucket
+			this.counts[0] += count;
+			return;
+		}
+		int sub = (int)((Double.doubleToRawLongBits(value) >>> (52 - SUB_BITS)) & (SUB_BUCKETS - 1));
+		this.counts[(exponent - this.minExponent) * SUB_BUCKETS + sub] += count;
+	}
+
+	/** Makes sure the bucket array covers the given exponent (as far as {@link #MAX_OCTAVES} allows).
+	 */
+	private void cover(int exponent) {
+		if (this.counts == null) {
+			this.counts = new long[INITIAL_OCTAVES * SUB_BUCKETS];
+			this.minExponent = exponent - INITIAL_OCTAVES / 2;
+			return;
+		}
+		int numOctaves = this.counts.length / SUB_BUCKETS;
+		int maxExponent = this.minExponent + numOctaves - 1;
+		if (exponent >= this.minExponent && exponent <= maxExponent) {
+			return;
+		}
+		if (exponent < this.minExponent && numOctaves == MAX_OCTAVES) {
+			return;
+		}
+		int newMin = Math.min(exponent, this.minExponent);
+		int newMax = Math.max(exponent, maxExponent);
+		// grow by at least a factor of two to keep the number of copies low
+		int newOctaves = Math.min(MAX_OCTAVES, Math.max(newMax - newMin + 1, 2 * numOctaves));
+		if (newMax - newMin + 1 > newOctaves || exponent < this.minExponent) {
+			// fold the lowest octaves if necessary, otherwise leave the extra room below
+			newMin = newMax - newOctaves + 1;
+		}
+		long[] newCounts = new long[newOctaves * SUB_BUCKETS];
+		for (int i = 0; i < this.counts.length; i++) {
+			if (this.counts[i] != 0) {
+				int octave = i / SUB_BUCKETS + this.minExponent - newMin;
+				int index = (octave < 0) ? 0 : octave * SUB_BUCKETS + i % SUB_BUCKETS;
+				newCounts[index] += this.counts[i];
+			}
+		}
+		this.counts = newCounts;
+		this.minExponent = newMin;
+	}
+
+	/** Returns the lower bound of the bucket with the given index.
+	 */
+	double lowerBound(int index) {
+		double octave = Math.scalb(1.0, this.minExponent + index / SUB_BUCKETS);
+		return octave + octave * (index % SUB_BUCKETS) / SUB_BUCKETS;
+	}
+
+	/** Returns the estimated value at the given percentile (between 0 and 100), i.e. the smallest recorded value
+	 * such that at least p percent of all values are smaller or equal. Returns 0 if nothing has been recorded.
+	 */
+	double getPercentile(double p) {
+		if (this.totalCount == 0) {
+			return 0.0;
+		}
+		long rank = (long)Math.ceil(Math.max(0.0, Math.min(100.0, p)) / 100.0 * this.totalCount);
+		if (rank < 1) rank = 1;
+		long seen = this.zeroCount;
+		if (rank <= seen) {
+			return Math.max(this.min, 0.0);
+		}
+		for (int i = 0; i < this.counts.length; i++) {
+			seen += this.counts[i];
+			if (rank <= seen) {
+				// return the middle of the bucket, but never beyond the recorded extremes
+				double lower = lowerBound(i);
+				double upper = lowerBound(i + 1);
+				return Math.max(this.min, Math.min(this.max, (lower + upper) / 2));
+			}
+		}
+		return this.max;
+	}
+
+	/** Returns the non-empty buckets as pairs of lower bound and count, in increasing order.
+	 */
+	double[][] getBuckets() {
+		int n = (this.zeroCount > 0) ? 1 : 0;
+		if (this.counts != null) {
+			for (int i = 0; i < this.counts.length; i++) {
+				if (this.counts[i] != 0) n++;
+			}
+		}
+		double[][] buckets = new double[n][];
+		n = 0;
+		if (this.zeroCount > 0) {
+			buckets[n++] = new double[]{0.0, this.zeroCount};
+		}
+		if (this.counts != null) {
+			for (int i = 0; i < this.counts.length; i++) {
+				if (this.counts[i] != 0) {
+					buckets[n++] = new double[]{lowerBound(i), this.counts[i]};
+				}
+			}
+		}
+		return buckets;
+	}
+
+	/** Adds all counts of the other histogram to this one.
+	 */
+	void merge(LogHistogram other) {
+		if (other.totalCount == 0) {
+			return;
+		}
+		double newMin = Math.min(this.min, other.min);
+		double newMax = Math.max(this.max, other.max);
+		if (other.zeroCount > 0) {
+			recordCount(0.0, other.zeroCount);
+		}
+		if (other.counts != null) {
+			for (int i = 0; i < other.counts.length; i++) {
+				if (other.counts[i] != 0) {
+					recordCount(other.lowerBound(i), other.counts[i]);
+				}
+			}
+		}
+		// the recorded extremes are exact, the bucket bounds used above are not
+		this.min = newMin;
+		this.max = newMax;
+	}
+
+}
@@ -0,0 +1,93 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Index of the elements of a queue, which answers whether an element is in the queue in O(1): maps each element 
+ * to the insertion numbers of its occurrences in the queue. From these, the queue works out the position of an 
+ * element. Elements are compared with equals, i.e. agents by identity and numbers and strings by value.
+ * <p>
+ * The index is only built when it is first needed, so queues that are never asked for membership or positions
+ * do not maintain it.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class MemberIndex {
+
+	/** The insertion numbers of the occurrences of an element, in increasing order. */
+	static class Occurrences {
+		long[] seqNos = new long[2];
+		int size = 0;
+
+		boolean contains(long seqNo) {
+			for (int i = 0; i < this.size; i++) {
+				if (this.seqNos[i] == seqNo) return true;
+			}
+			return false;
+		}
+
+		long first() {
+			return this.seqNos[0];
+		}
+
+		long last() {
+			return this.seqNos[this.size - 1];
+		}
+	}
+
+	HashMap<Object, Occurrences> entries = new HashMap<Object, Occurrences>();
+
+	/** Notes that the given element has been inserted with the given insertion number.
+	 */
+	void add(Object elem, long seqNo) {
+		Occurrences o = this.entries.get(elem);
+		if (o == null) {
+			o = new Occurrences();
+			this.entries.put(elem, o);
+		}
+		if (o.size == o.seqNos.length) {
+			o.seqNos = Arrays.copyOf(o.seqNos, 2 * o.size);
+		}
+		// new elements usually have the largest insertion number, so this hardly ever shifts
+		int i = o.size;
+		while (i > 0 && o.seqNos[i - 1] > seqNo) {
+			o.seqNos[i] = o.seqNos[i - 1];
+			i--;
+		}
+		o.seqNos[i] = seqNo;
+		o.size++;
+	}
+
+	/** Notes that the occurrence of the given element with the given insertion number has left the queue.
+	 */
+	void remove(Object elem, long seqNo) {
+		Occurrences o = this.entries.get(elem);
+		if (o == null) {
+			return;
+		}
+		int i = 0;
+		while (i < o.size && o.seqNos[i] != seqNo) {
+			i++;
+		}
+		if (i == o.size) {
+			return;
+		}
+		if (o.size == 1) {
+			this.entries.remove(elem);
+			return;
+		}
+		System.arraycopy(o.seqNos, i + 1, o.seqNos, i, o.size - i - 1);
+		o.size--;
+	}
+
+	/** Returns the occurrences of the given element, or null if it is not in the queue.
+	 */
+	Occurrences get(Object elem) {
+		return this.entries.get(elem);
+	}
+
+}
@@ -0,0 +1,227 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Command;
+import org.nlogo.api.Context;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.Primitive;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.Syntax;
+
+/** Counts the calls of the extension's primitives and measures how long they take, for the workspace that loaded
+ * the extension. Every primitive is registered wrapped in a {@link ProfiledCommand} or {@link ProfiledReporter},
+ * which just passes the call on while profiling is off, so the only cost then is one test of a flag. While
+ * profiling is on, each call is timed with {@link System#nanoTime()}; the latencies are kept in a {@link LogHistogram}
+ * per primitive (for the percentiles), and the number of elements inserted into and removed from each queue that is
+ * the first or second input of a primitive is noted.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class Profiler {
+
+	/** Calls and latencies of one primitive. */
+	static class Stats {
+		final String name;
+		long count;
+		long totalTime;
+		// latencies in nanoseconds
+		LogHistogram latencies;
+
+		Stats(String name) {
+			this.name = name;
+			this.latencies = new LogHistogram();
+		}
+
+		void reset() {
+			this.count = 0;
+			this.totalTime = 0;
+			this.latencies.reset();
+		}
+	}
+
+	/** A command that is profiled. */
+	static class ProfiledCommand implements Command {
+		final Command command;
+		final Profiler profiler;
+		final Stats stats;
+
+		ProfiledCommand(Command command, Profiler profiler, Stats stats) {
+			this.command = command;
+			this.profiler = profiler;
+			this.stats = stats;
+		}
+
+		public Syntax getSyntax() {
+			return this.command.getSyntax();
+		}
+
+		@Override
+		public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+			if (! this.profiler.enabled) {
+				this.command.perform(args, context);
+				return;
+			}
+			long[] before = this.profiler.countElements(args);
+			long start = System.nanoTime();
+			try {
+				this.command.perform(args, context);
+			}
+			finally {
+				this.profiler.record(this.stats, System.nanoTime() - start, args, before);
+			}
+		}
+	}
+
+	/** A reporter that is profiled. */
+	static class ProfiledReporter implements Reporter {
+		final Reporter reporter;
+		final Profiler profiler;
+		final Stats stats;
+
+		ProfiledReporter(Reporter reporter, Profiler profiler, Stats stats) {
+			this.reporter = reporter;
+			this.profiler = profiler;
+			this.stats = stats;
+		}
+
+		public Syntax getSyntax() {
+			return this.reporter.getSyntax();
+		}
+
+		@Override
+		public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+			if (! this.profiler.enabled) {
+				return this.reporter.report(args, context);
+			}
+			long[] before = this.profiler.countElements(args);
+			long start = System.nanoTime();
+			try {
+				return this.reporter.report(args, context);
+			}
+			finally {
+				this.profiler.record(this.stats, System.nanoTime() - start, args, before);
+			}
+		}
+	}
+
+	boolean enabled;
+	// wall-clock time when profiling was last switched on and off
+	long startTime;
+	long stopTime;
+	// statistics of all primitives, in the order of registration
+	List<Stats> primitives;
+	// elements inserted into and removed from each queue while profiling (queues no longer used are dropped)
+	Map<Queue, long[]> throughput;
+
+	Profiler() {
+		this.enabled = false;
+		this.primitives = new ArrayList<Stats>();
+		this.throughput = new WeakHashMap<Queue, long[]>();
+	}
+
+	/** Returns the given primitive wrapped so that its calls are profiled (while profiling is on).
+	 */
+	Primitive wrap(String name, Primitive primitive) {
+		Stats stats = new Stats(name);
+		this.primitives.add(stats);
+		if (primitive instanceof Command) {
+			return new ProfiledCommand((Command)primitive, this, stats);
+		}
+		return new ProfiledReporter((Reporter)primitive, this, stats);
+	}
+
+	/** Switches profiling on (starting afresh) or off (keeping what has been measured).
+	 */
+	void setEnabled(boolean enabled) {
+		if (enabled && ! this.enabled) {
+			for (Stats stats : this.primitives) {
+				stats.reset();
+			}
+			this.throughput.clear();
+			this.startTime = System.nanoTime();
+		}
+		else if (! enabled && this.enabled) {
+			this.stopTime = System.nanoTime();
+		}
+		this.enabled = enabled;
+	}
+
+	/** Returns the number of elements inserted into and removed from the queues among the first two arguments so far.
+	 */
+	private long[] countElements(Argument[] args) throws ExtensionException, LogoException {
+		long[] counts = new long[4];
+		for (int i = 0; i < 2 && i < args.length; i++) {
+			Object arg = args[i].get();
+			if (arg instanceof Queue) {
+				Queue q = (Queue)arg;
+				counts[2 * i] = q.stats.numInserts;
+				counts[2 * i + 1] = q.stats.waitTimes.totalCount + q.stats.numReneged + q.stats.numDropped;
+			}
+		}
+		return counts;
+	}
+
+	/** Records a call that took the given time, and the elements that have entered and left the queues among its
+	 * first two arguments (compared with the given counts from before the call).
+	 */
+	private void record(Stats stats, long time, Argument[] args, long[] before) throws ExtensionException, LogoException {
+		stats.count++;
+		stats.totalTime += time;
+		stats.latencies.record(time);
+		for (int i = 0; i < 2 && i < args.length; i++) {
+			Object arg = args[i].get();
+			if (arg instanceof Queue) {
+				Queue q = (Queue)arg;
+				long[] t = this.throughput.get(q);
+				if (t == null) {
+					t = new long[2];
+					this.throughput.put(q, t);
+				}
+				// statistics that were reset during the call count from 0
+				long inserted = q.stats.numInserts;
+				long removed = q.stats.waitTimes.totalCount + q.stats.numReneged + q.stats.numDropped;
+				t[0] += (inserted >= before[2 * i]) ? inserted - before[2 * i] : inserted;
+				t[1] += (removed >= before[2 * i + 1]) ? removed - before[2 * i + 1] : removed;
+			}
+		}
+	}
+
+	/** Returns the statistics of all primitives that have been called while profiling, each as name, number of
+	 * calls, total time and 99th percentile of the latency (both in milliseconds).
+	 */
+	List<Object[]> getPrimitiveStats() {
+		List<Object[]> result = new ArrayList<Object[]>();
+		for (Stats stats : this.primitives) {
+			if (stats.count > 0) {
+				result.add(new Object[]{stats.name, Double.valueOf(stats.count), Double.valueOf(stats.totalTime / 1e6),
+						Double.valueOf(stats.latencies.getPercentile(99) / 1e6)});
+			}
+		}
+		return result;
+	}
+
+	/** Returns the throughput of all queues used while profiling, each as queue, number of elements inserted, number
+	 * of elements removed (including cancelled and dropped ones) and elements inserted or removed per second.
+	 */
+	List<Object[]> getQueueStats() {
+		double seconds = ((this.enabled ? System.nanoTime() : this.stopTime) - this.startTime) / 1e9;
+		List<Object[]> result = new ArrayList<Object[]>();
+		for (Map.Entry<Queue, long[]> e : this.throughput.entrySet()) {
+			long[] t = e.getValue();
+			double rate = (seconds > 0) ? (t[0] + t[1]) / seconds : 0.0;
+			result.add(new Object[]{e.getKey(), Double.valueOf(t[0]), Double.valueOf(t[1]), Double.valueOf(rate)});
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,51 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QBusyServers implements Reporter {
+
+	/** The busy-servers primitive expects a service station as input and returns a number (the number of busy servers).
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType()}, Syntax.NumberType());
+	}
+	
+	/** Returns the number of servers of the specified queue that are currently serving an element. The first argument 
+	 * {@link args[0]} has to be a queue with servers set up by set-servers.
+	 * Generates an error if the argument is invalid.
+	 * 
+	 * @param args the arguments to this call of busy-servers
+	 * @param context the NetLogo context
+	 * @return the number of busy servers
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+	    Object arg0 = args[0].get();
+	    if (!(arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+	    }
+	    Queue q = (Queue)arg0;
+	    if (q.station == null) {
+	    	throw new ExtensionException ("not a service station: " + Dump.logoObject(arg0));
+	    }
+		return Double.valueOf(q.getNumBusyServers());
+	}
+
+}
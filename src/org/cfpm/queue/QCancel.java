@@ -0,0 +1,64 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QCancel implements Command {
+
+	/** The cancel primitive expects a queue, a handle returned by insert-handle and the current time (as double) as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType(), Syntax.NumberType()});
+	}
+	
+	
+	/** Cancels the object with the given handle, i.e. removes it from the queue without serving it (reneging). 
+	 * Its time in the queue is recorded in the reneging statistics. Nothing happens if the object has already left 
+	 * the queue. First argument {@link args[0]} has to be a queue, second argument {@link args[1]} has to be a handle 
+	 * returned by insert-handle for this queue, third argument {@link args[2]} has to be a double value representing 
+	 * the current time.
+	 * 
+	 *  @param args the arguments to this call of cancel
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are of the wrong type
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		double arg1;
+		double arg2;
+		try {
+			arg1 = args[1].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[1]));
+		}
+		try {
+			arg2 = args[2].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[2]));
+		}
+		((Queue)arg0).cancel((long)arg1, arg2);
+		((Queue)arg0).runCallbacks(context);
+	}
+
+}
@@ -0,0 +1,75 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.LogoListBuilder;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QClassStats implements Reporter {
+	
+	// statistics are kept in arrays indexed by class, so the number of classes is limited
+	final static int MAX_CLASS = 65535;
+	
+	/** The class-stats primitive expects a queue and a class as input and returns a list of statistics of that class.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType()}, Syntax.ListType());
+	}
+
+	/** Returns a list of statistical measures of the objects of the given class in the specified queue since the last
+	 * reset, in the following order: number of arrivals, number of departures, mean wait time (including the objects
+	 * still waiting, but not the cancelled or dropped ones), min wait time, max wait time, mean length. Objects 
+	 * inserted without a class are of class 0. The first argument {@link args[0]} has to be a queue, the second 
+	 * argument {@link args[1]} has to be a class, i.e. a non-negative integer.
+	 * Generates an error if the arguments are invalid.
+	 * 
+	 * @param args the arguments to this call of class-stats
+	 * @param context the NetLogo context
+	 * @return a list of statistics of the class
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+	    if (!(arg0 instanceof Queue)) {
+	    	throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+	    }
+	    int classId = getClassId(args[1]);
+	    LogoListBuilder list = new LogoListBuilder();
+	    for (double value : ((Queue)arg0).getClassStats(classId)) {
+	    	list.add(Double.valueOf(value));
+	    }
+		return list.toLogoList();
+	}
+	
+	/** Returns the class given as argument to a primitive, which has to be an integer between 0 and {@link #MAX_CLASS}.
+	 */
+	static int getClassId(Argument arg) throws ExtensionException {
+		double value;
+		try {
+			value = arg.getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(arg));
+		}
+		if (! (value >= 0 && value <= MAX_CLASS && value == Math.floor(value))) {
+			throw new ExtensionException (value + " is not a valid class.");
+		}
+		return (int)value;
+	}
+
+}
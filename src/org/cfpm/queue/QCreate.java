@@ -17,15 +17,19 @@ import org.nlogo.core.SyntaxJ;
  */
 public class QCreate implements Reporter {
 
-	/** The create primitive expects a strategy as input and returns a queue.
+	/** The create primitive expects a strategy and (optionally) a capacity and a drop policy as input and returns a queue.
 	 * 
 	 */
 	public Syntax getSyntax() {
-		return SyntaxJ.reporterSyntax(new int[]{Syntax.NumberType()}, Syntax.WildcardType());
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.NumberType(), Syntax.NumberType() | Syntax.RepeatableType()}, 
+				Syntax.WildcardType(), 1);
 	}
 	
 	/** Performs the creation of a new queue and reports it. The first argument {@link args[0]} has
-	 * to contain the queueing strategy.
+	 * to contain the queueing strategy (0 = FIFO, 1 = LIFO, 2 = PRIORITY, 3 = EVENT). The optional second argument 
+	 * {@link args[1]} limits the number of elements in the queue; the optional third argument {@link args[2]} says what 
+	 * happens when an element arrives at the full queue (0 = the element is rejected (default), 1 = the element that 
+	 * would leave last is dropped, 2 = the element that would leave next is dropped, 3 = random early detection).
 	 * 
 	 * @param args the arguments to this call of create
 	 * @param context the NetLogo context
@@ -40,7 +44,24 @@ public class QCreate implements Reporter {
 			if (! Queue.isValidStrategy(strategy)) {
 				throw new ExtensionException(strategy + " is not a valid queue strategy.");
 			}
-			Queue queue = new Queue(strategy);
+			Queue queue;
+			if (args.length > 1) {
+				int capacity = args[1].getIntValue();
+				if (capacity < 0) {
+					throw new ExtensionException(capacity + " is not a valid capacity.");
+				}
+				int dropPolicy = (args.length > 2) ? args[2].getIntValue() : Queue.REJECT;
+				if (! Queue.isValidDropPolicy(dropPolicy)) {
+					throw new ExtensionException(dropPolicy + " is not a valid drop policy.");
+				}
+				queue = new Queue(strategy, capacity, dropPolicy);
+				// random early detection uses NetLogo's random number generator
+				queue.admission.rng = context.getRNG();
+			}
+			else {
+				queue = new Queue(strategy);
+			}
+			QueueExtension.register(queue);
 			return queue;
 		}
 		catch (LogoException e) {
@@ -0,0 +1,57 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.LogoList;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QCreateGroup implements Reporter {
+
+	/** The create-group primitive expects a list of queues as input and returns a new group of these queues.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.ListType()}, Syntax.WildcardType());
+	}
+
+	/** Creates a group of the given queues, which keeps track of their lengths so that the shortest queue can be
+	 * found quickly (see group-shortest) and reports statistics of all queues at once (see group-stats). The argument
+	 * {@link args[0]} has to be a list of different queues. A queue belongs to at most one group: queues that 
+	 * were part of another group leave it. Generates an error if the argument is invalid.
+	 * 
+	 * @param args the arguments to this call of create-group
+	 * @param context the NetLogo context
+	 * @return the new group
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		LogoList list = args[0].getList();
+		Queue[] members = new Queue[list.size()];
+		for (int i = 0; i < members.length; i++) {
+			Object item = list.get(i);
+			if (! (item instanceof Queue)) {
+		        throw new ExtensionException ("not a queue: " + Dump.logoObject(item));			
+			}
+			members[i] = (Queue)item;
+		}
+		QueueGroup group = new QueueGroup(members);
+		// registered right away, so that a group referred to only from inside a queue is exported, too
+		QueueExtension.register(group);
+		return group;
+	}
+
+}
@@ -3,8 +3,12 @@
  */
 package org.cfpm.queue;
 
+import java.util.Locale;
+
 
 /** An element of the queue. Consists of the actual object to be queued and a time stamp denoting time of insertion.
+ * The queue itself stores objects and time stamps in parallel arrays; instances of this class are only created
+ * on demand as a view of a single element (e.g. for output and comparison).
  * 
  * @author Ruth Meyer
  *
@@ -42,12 +46,46 @@ public class QElem {
 	}
 	
 	public String toString() {
-		StringBuffer buf = new StringBuffer("[");
-		buf.append(String.format("%.5f", time));
-		buf.append(" ");
-		buf.append(elem.toString());
-		buf.append("]");
+		StringBuilder buf = new StringBuilder();
+		append(buf, this.elem, this.time);
 		return buf.toString();
 	}
+	
+	/** Appends the representation of an element with the given object and time stamp to the given buffer.
+	 */
+	static void append(StringBuilder buf, Object elem, double time) {
+		buf.append('[');
+		appendTime(buf, time);
+		buf.append(' ');
+		buf.append(elem.toString());
+		buf.append(']');
+	}
+	
+	/** Appends the given time stamp with five decimal places (as String.format("%.5f", time) in the root locale),
+	 * without creating a Formatter. Values that are too large, or too close to a rounding boundary to be rounded 
+	 * safely in double arithmetic, are left to String.format.
+	 */
+	static void appendTime(StringBuilder buf, double time) {
+		double scaled = Math.abs(time) * 1e5;
+		if (scaled < 1e9) {
+			long whole = (long)scaled;
+			double fraction = scaled - whole;
+			if (Math.abs(fraction - 0.5) > 1e-6) {
+				long units = (fraction > 0.5) ? whole + 1 : whole;
+				if (Double.doubleToRawLongBits(time) < 0) {
+					// also for -0.0, as String.format does
+					buf.append('-');
+				}
+				buf.append(units / 100000).append('.');
+				long decimals = units % 100000;
+				for (long d = 10000; d > decimals && d > 1; d /= 10) {
+					buf.append('0');
+				}
+				buf.append(decimals);
+				return;
+			}
+		}
+		buf.append(String.format(Locale.ROOT, "%.5f", time));
+	}
 
 }
@@ -0,0 +1,69 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.LogoListBuilder;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QExpire implements Reporter {
+	
+	/** The expire primitive expects a queue and the current time as input and returns a list of the expired objects.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType()}, Syntax.ListType());
+	}
+	
+
+	/** Removes all objects from the specified queue whose patience (given to insert-with-patience) has run out by the 
+	 * current time, and returns them as a list in the order of their deadlines. Expired objects do not count as served: 
+	 * they are recorded in the reneging statistics. Only the expired objects are looked at, so calling expire every 
+	 * tick is cheap even for long queues. The first argument {@link args[0]} has to be a queue, the second argument 
+	 * {@link args[1]} has to be a double value representing the current time.
+	 * Generates an error if the arguments are invalid.
+	 * 
+	 * @param args the arguments to this call of expire
+	 * @param context the NetLogo context
+	 * @return the list of expired objects
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		double arg1;
+		try {
+			arg1 = args[1].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[1]));
+		}
+		List<Object> expired = new ArrayList<Object>();
+		((Queue)arg0).expire(arg1, expired);
+		((Queue)arg0).runCallbacks(context);
+		LogoListBuilder list = new LogoListBuilder();
+		for (Object elem : expired) {
+			list.add(elem);
+		}
+		return list.toLogoList();
+	}
+
+}
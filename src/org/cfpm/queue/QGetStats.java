@@ -28,8 +28,10 @@ public class QGetStats implements Reporter {
 	}
 
 	/** Returns a list of statistical measures of the specified queue in the following order:
-	 * mean size, max size, mean wait time, max wait time, min wait time. The first argument 
-	 * {@link args[0]} has to be a queue.
+	 * mean size, max size, mean wait time, max wait time, min wait time, and for a queue with limited capacity 
+	 * the blocking probability (the fraction of arrivals that were not admitted), the number of arrivals that were
+	 * not admitted and the number of elements dropped to make room for an arrival (all 0 for other queues). 
+	 * The first argument {@link args[0]} has to be a queue.
 	 * Generates an error if the argument is invalid.
 	 * 
 	 * @param args the arguments to this call of get-stats
@@ -51,6 +53,10 @@ public class QGetStats implements Reporter {
 	    list.add(Double.valueOf(q.getMeanWaitTime()));
 	    list.add(Double.valueOf(q.getMaxWaitTime()));
 	    list.add(Double.valueOf(q.getMinWaitTime()));
+	    double[] loss = q.getLossStats();
+	    for (int i = 0; i < loss.length; i++) {
+	    	list.add(Double.valueOf(loss[i]));
+	    }
 	    QueueExtension.writeToNetLogo(list.toLogoList().toString(), false, context);
 		return list.toLogoList();
 	}
@@ -0,0 +1,51 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Nobody$;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QGroupChooseTwo implements Reporter {
+
+	/** The group-choose-two primitive expects a group of queues as input and returns one of its queues.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType()}, Syntax.WildcardType());
+	}
+
+	/** Picks two different queues of the group at random (using NetLogo's random number generator) and returns the 
+	 * shorter one (the first one picked if both are equally long), or nobody if the group is empty. Unlike 
+	 * group-shortest, this spreads simultaneous arrivals over several short queues. The argument {@link args[0]} 
+	 * has to be a group created by create-group.
+	 * Generates an error if the argument is invalid.
+	 * 
+	 * @param args the arguments to this call of group-choose-two
+	 * @param context the NetLogo context
+	 * @return the chosen queue
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof QueueGroup)) {
+	        throw new ExtensionException ("not a queue group: " + Dump.logoObject(arg0));
+		}
+		Queue chosen = ((QueueGroup)arg0).chooseTwo(context.getRNG());
+		return (chosen == null) ? Nobody$.MODULE$ : chosen;
+	}
+
+}
@@ -0,0 +1,50 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Nobody$;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QGroupShortest implements Reporter {
+
+	/** The group-shortest primitive expects a group of queues as input and returns its shortest queue.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType()}, Syntax.WildcardType());
+	}
+
+	/** Returns the shortest queue of the group (of several equally short queues, the one that comes first in the 
+	 * list the group was created from), or nobody if the group is empty. Does not look at the queues, as the group 
+	 * keeps them ordered by length. The argument {@link args[0]} has to be a group created by create-group.
+	 * Generates an error if the argument is invalid.
+	 * 
+	 * @param args the arguments to this call of group-shortest
+	 * @param context the NetLogo context
+	 * @return the shortest queue
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof QueueGroup)) {
+	        throw new ExtensionException ("not a queue group: " + Dump.logoObject(arg0));
+		}
+		Queue shortest = ((QueueGroup)arg0).getShortest();
+		return (shortest == null) ? Nobody$.MODULE$ : shortest;
+	}
+
+}
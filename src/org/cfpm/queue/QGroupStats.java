@@ -0,0 +1,54 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.LogoListBuilder;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QGroupStats implements Reporter {
+	
+	/** The group-stats primitive expects a group of queues as input and returns a list of statistics of all its queues.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType()}, Syntax.ListType());
+	}
+
+	/** Returns a list of statistical measures of all queues in the group together, in the following order: number
+	 * of queues, total current length, mean total length (the sum of the mean lengths), pooled mean wait time (the
+	 * mean over the elements of all queues, each queue weighted by its number of elements), max wait time.
+	 * The argument {@link args[0]} has to be a group created by create-group.
+	 * Generates an error if the argument is invalid.
+	 * 
+	 * @param args the arguments to this call of group-stats
+	 * @param context the NetLogo context
+	 * @return a list of statistics of the group
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+	    if (!(arg0 instanceof QueueGroup)) {
+	    	throw new ExtensionException ("not a queue group: " + Dump.logoObject(arg0));
+	    }
+	    LogoListBuilder list = new LogoListBuilder();
+	    for (double value : ((QueueGroup)arg0).getStats()) {
+	    	list.add(Double.valueOf(value));
+	    }
+		return list.toLogoList();
+	}
+
+}
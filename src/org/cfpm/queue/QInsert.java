@@ -18,18 +18,21 @@ import org.nlogo.core.SyntaxJ;
  */
 public class QInsert implements Command {
 
-	// expecting a queue, an entity and a time as input
-	/** The insert primitive expects a queue, the object to be put into the queue, and the current time (as double) as inputs.
+	// expecting a queue, an entity, a time and optionally a class as input
+	/** The insert primitive expects a queue, the object to be put into the queue, the current time (as double) and 
+	 * (optionally) the object's class as inputs.
 	 * 
 	 */
 	public Syntax getSyntax() {
-		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.WildcardType(), Syntax.NumberType()});
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.WildcardType(), Syntax.NumberType(), 
+				Syntax.NumberType() | Syntax.RepeatableType()}, 3);
 	}
 	
 	
 	/** Performs the insertion. First argument {@link args[0]} has to be a queue, second argument
 	 * {@link args[1]} has to be the object to be inserted, third argument {@link args[2]} has to be
-	 * a double value representing the current time.
+	 * a double value representing the current time. The optional fourth argument {@link args[3]} is the object's 
+	 * class, a non-negative integer (0 by default); the queue keeps statistics per class (see class-stats).
 	 * 
 	 *  @param args the arguments to this call of insert
 	 *  @param context the NetLogo context
@@ -47,14 +50,17 @@ public class QInsert implements Command {
 		double arg2;
 		try {
 			arg2 = args[2].getDoubleValue();
-			// try and insert it. 
-			// throws an ExtensionException if the time value of arg2 is BEFORE the
-			// time of last change in the queue (i.e. if simulation time is running backwards)
-			q.enqueue(arg1, arg2); 
 		}
 		catch (LogoException e) {
 			throw new ExtensionException ("not a number: " + Dump.logoObject(args[2]));
 		}
+		int classId = (args.length > 3) ? QClassStats.getClassId(args[3]) : 0;
+		// try and insert it. 
+		// throws an ExtensionException if the time value of arg2 is BEFORE the
+		// time of last change in the queue (i.e. if simulation time is running backwards)
+		q.setRandom(context.getRNG());
+		q.enqueue(arg1, (q.strategy == Queue.EVENT) ? arg2 : 0.0, arg2, classId); 
+		q.runCallbacks(context);
 
 	}
 
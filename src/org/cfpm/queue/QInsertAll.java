@@ -0,0 +1,99 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import java.util.Arrays;
+
+import org.nlogo.api.Agent;
+import org.nlogo.api.AgentSet;
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.MersenneTwisterFast;
+import org.nlogo.core.LogoList;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QInsertAll implements Command {
+
+	/** The insert-all primitive expects a queue, an agentset or list of objects to be put into the queue, 
+	 * and the current time (as double) as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.AgentsetType() | Syntax.ListType(), Syntax.NumberType()});
+	}
+	
+	
+	/** Performs the insertion of all objects at once. First argument {@link args[0]} has to be a queue, second argument
+	 * {@link args[1]} has to be an agentset or a list, third argument {@link args[2]} has to be a double value 
+	 * representing the current time. The items of a list are inserted in list order; the agents of an agentset
+	 * are inserted in random order (as with ask).
+	 * 
+	 *  @param args the arguments to this call of insert-all
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are of the wrong type
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		Queue q = (Queue)arg0;
+		Object arg1 = args[1].get();
+		Object[] elems;
+		if (arg1 instanceof LogoList) {
+			LogoList list = (LogoList)arg1;
+			elems = new Object[list.size()];
+			for (int i = 0; i < elems.length; i++) {
+				elems[i] = list.get(i);
+			}
+		}
+		else if (arg1 instanceof AgentSet) {
+			AgentSet agents = (AgentSet)arg1;
+			elems = new Object[agents.count()];
+			int i = 0;
+			for (Agent agent : agents.agents()) {
+				elems[i++] = agent;
+			}
+			if (i < elems.length) {
+				// the count of an array agentset includes turtles that have died since, which are not iterated
+				elems = Arrays.copyOf(elems, i);
+			}
+			// shuffle (Fisher-Yates), using NetLogo's random number generator
+			MersenneTwisterFast rng = context.getRNG();
+			for (int j = i - 1; j > 0; j--) {
+				int k = rng.nextInt(j + 1);
+				Object tmp = elems[j];
+				elems[j] = elems[k];
+				elems[k] = tmp;
+			}
+		}
+		else {
+			throw new ExtensionException ("not an agentset or list: " + Dump.logoObject(arg1));
+		}
+		double arg2;
+		try {
+			arg2 = args[2].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[2]));
+		}
+		// throws an ExtensionException if the time value of arg2 is BEFORE the
+		// time of last change in the queue (i.e. if simulation time is running backwards)
+		q.setRandom(context.getRNG());
+		q.enqueueAll(elems, arg2);
+		q.runCallbacks(context);
+	}
+
+}
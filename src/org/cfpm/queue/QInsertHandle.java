@@ -0,0 +1,80 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QInsertHandle implements Reporter {
+
+	/** The insert-handle primitive expects a queue, the object to be put into the queue, the current time (as double) 
+	 * and (optionally) the object's priority or due time as inputs, and returns a handle for the inserted object
+	 * (or false).
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.WildcardType(), Syntax.NumberType(), 
+				Syntax.NumberType() | Syntax.RepeatableType()}, Syntax.NumberType() | Syntax.BooleanType(), 3);
+	}
+	
+	/** Performs the insertion like insert (or insert-with-priority and schedule, respectively) and returns a number 
+	 * that can be passed to cancel to remove the object while it is waiting. First argument {@link args[0]} has to be 
+	 * a queue, second argument {@link args[1]} has to be the object to be inserted, third argument {@link args[2]} 
+	 * has to be a double value representing the current time. The optional fourth argument {@link args[3]} is the 
+	 * object's priority for a priority queue, or its due time for an event list (the current time by default); 
+	 * it is ignored for other queues. Reports false if the queue has limited capacity and does not admit the object.
+	 * Generates an error if the arguments are invalid.
+	 * 
+	 * @param args the arguments to this call of insert-handle
+	 * @param context the NetLogo context
+	 * @return the handle of the inserted object
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		Queue q = (Queue)arg0;
+		Object arg1 = args[1].get();
+		double arg2;
+		try {
+			arg2 = args[2].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[2]));
+		}
+		double arg3 = (q.strategy == Queue.EVENT) ? arg2 : 0.0;
+		if (args.length > 3) {
+			try {
+				arg3 = args[3].getDoubleValue();
+			}
+			catch (LogoException e) {
+				throw new ExtensionException ("not a number: " + Dump.logoObject(args[3]));
+			}
+		}
+		// throws an ExtensionException if the time value of arg2 is BEFORE the
+		// time of last change in the queue (i.e. if simulation time is running backwards)
+		q.setRandom(context.getRNG());
+		long handle = q.enqueueWithHandle(arg1, arg3, arg2);
+		q.runCallbacks(context);
+		if (handle < 0) {
+			return Boolean.FALSE;
+		}
+		return Double.valueOf(handle);
+	}
+
+}
@@ -0,0 +1,72 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QInsertWithPatience implements Command {
+
+	/** The insert-with-patience primitive expects a queue, the object to be put into the queue, the current time 
+	 * (as double) and the object's patience (as double) as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.WildcardType(), Syntax.NumberType(), Syntax.NumberType()});
+	}
+	
+	
+	/** Performs the insertion. First argument {@link args[0]} has to be a queue, second argument {@link args[1]} has 
+	 * to be the object to be inserted, third argument {@link args[2]} has to be a double value representing the current 
+	 * time, fourth argument {@link args[3]} has to be the maximum time the object is willing to wait. Objects that are 
+	 * still in the queue when their patience has run out are removed by expire.
+	 * 
+	 *  @param args the arguments to this call of insert-with-patience
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are of the wrong type
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		Object arg1 = args[1].get();
+		double arg2;
+		double arg3;
+		try {
+			arg2 = args[2].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[2]));
+		}
+		try {
+			arg3 = args[3].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[3]));
+		}
+		if (! (arg3 >= 0)) {
+			throw new ExtensionException (arg3 + " is not a valid patience.");
+		}
+		// throws an ExtensionException if the time value of arg2 is BEFORE the
+		// time of last change in the queue (i.e. if simulation time is running backwards)
+		Queue q = (Queue)arg0;
+		q.setRandom(context.getRNG());
+		q.enqueueWithPatience(arg1, arg3, arg2);
+		q.runCallbacks(context);
+	}
+
+}
@@ -0,0 +1,74 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QInsertWithPriority implements Command {
+
+	/** The insert-with-priority primitive expects a priority queue, the object to be put into the queue, its priority,
+	 * the current time (as double) and (optionally) the object's class as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.WildcardType(), Syntax.NumberType(), Syntax.NumberType(),
+				Syntax.NumberType() | Syntax.RepeatableType()}, 4);
+	}
+	
+	
+	/** Performs the insertion. First argument {@link args[0]} has to be a queue with PRIORITY strategy, second argument
+	 * {@link args[1]} has to be the object to be inserted, third argument {@link args[2]} has to be its priority
+	 * (smaller values leave the queue first), fourth argument {@link args[3]} has to be a double value representing 
+	 * the current time. The optional fifth argument {@link args[4]} is the object's class (0 by default).
+	 * 
+	 *  @param args the arguments to this call of insert-with-priority
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are of the wrong type
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		Queue q = (Queue)arg0;
+		if (q.strategy != Queue.PRIORITY) {
+			throw new ExtensionException ("not a priority queue: " + Dump.logoObject(arg0));
+		}
+		Object arg1 = args[1].get();
+		double arg2;
+		double arg3;
+		try {
+			arg2 = args[2].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[2]));
+		}
+		try {
+			arg3 = args[3].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[3]));
+		}
+		int classId = (args.length > 4) ? QClassStats.getClassId(args[4]) : 0;
+		// throws an ExtensionException if the time value of arg3 is BEFORE the
+		// time of last change in the queue (i.e. if simulation time is running backwards)
+		q.setRandom(context.getRNG());
+		q.enqueue(arg1, arg2, arg3, classId);
+		q.runCallbacks(context);
+	}
+
+}
@@ -0,0 +1,52 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.LogoListBuilder;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QLengthDistribution implements Reporter {
+
+	/** The length-distribution primitive expects a queue as input and returns a list of probabilities.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType()}, Syntax.ListType());
+	}
+	
+	/** Returns the time-weighted length distribution of the specified queue as a list, where item k is the fraction 
+	 * of time the queue has had length k. The first argument {@link args[0]} has to be a queue.
+	 * Generates an error if the argument is invalid.
+	 * 
+	 * @param args the arguments to this call of length-distribution
+	 * @param context the NetLogo context
+	 * @return the length distribution of the queue
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+	    Object arg0 = args[0].get();
+	    if (!(arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+	    }
+	    LogoListBuilder list = new LogoListBuilder();
+	    for (double p : ((Queue)arg0).getLengthDistribution()) {
+	    	list.add(Double.valueOf(p));
+	    }
+		return list.toLogoList();
+	}
+
+}
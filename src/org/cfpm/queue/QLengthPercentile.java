@@ -0,0 +1,59 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QLengthPercentile implements Reporter {
+
+	/** The length-percentile primitive expects a queue and a percentile (between 0 and 100) as input and returns a number 
+	 * (the queue length at this percentile).
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType()}, Syntax.NumberType());
+	}
+	
+	/** Returns the smallest length k such that the specified queue has had length k or less for at least the given 
+	 * percentage of time. The first argument {@link args[0]} has to be a queue, the second argument {@link args[1]} 
+	 * has to be a number between 0 and 100.
+	 * Generates an error if the arguments are invalid.
+	 * 
+	 * @param args the arguments to this call of length-percentile
+	 * @param context the NetLogo context
+	 * @return the length percentile of the queue
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+	    Object arg0 = args[0].get();
+	    if (!(arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+	    }
+	    double arg1;
+	    try {
+	    	arg1 = args[1].getDoubleValue();
+	    }
+	    catch (LogoException e) {
+	    	throw new ExtensionException ("not a number: " + Dump.logoObject(args[1]));
+	    }
+	    if (arg1 < 0 || arg1 > 100) {
+	    	throw new ExtensionException (arg1 + " is not a valid percentile (0 - 100).");
+	    }
+		return Double.valueOf(((Queue)arg0).getLengthPercentile(arg1));
+	}
+
+}
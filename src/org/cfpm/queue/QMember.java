@@ -0,0 +1,49 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QMember implements Reporter {
+
+	/** The member? primitive expects a queue and an object as input and returns true (if the object is in the queue) or false.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.WildcardType()}, Syntax.BooleanType());
+	}
+	
+	/** Returns true if the given object is waiting in the specified queue; otherwise returns false. The first argument 
+	 * {@link args[0]} has to be a queue, the second argument {@link args[1]} can be any object (agents are looked up 
+	 * by identity, other objects by value). The first call builds an index of the queue, which is kept up to date 
+	 * from then on, so that later calls take constant time.
+	 * Generates an error if the argument is invalid.
+	 * 
+	 * @param args the arguments to this call of member?
+	 * @param context the NetLogo context
+	 * @return true or false
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+	      Object arg0 = args[0].get();
+	      if (!(arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+	      }
+	      return ((Queue) arg0).contains(args[1].get());
+	}
+
+}
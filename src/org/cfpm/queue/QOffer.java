@@ -0,0 +1,76 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QOffer implements Reporter {
+
+	/** The offer primitive expects a queue, the object to be put into the queue, the current time (as double)
+	 * and (optionally) the object's priority or due time as inputs, and returns whether the object was admitted.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.WildcardType(), Syntax.NumberType(),
+				Syntax.NumberType() | Syntax.RepeatableType()}, Syntax.BooleanType(), 3);
+	}
+
+	/** Performs the insertion like insert (or insert-with-priority and schedule, respectively) and reports true if
+	 * the object was admitted, or false if the queue has limited capacity and its drop policy has dropped the object
+	 * (queues of unlimited capacity admit every object). First argument {@link args[0]} has to be a queue, second
+	 * argument {@link args[1]} has to be the object to be inserted, third argument {@link args[2]} has to be a double
+	 * value representing the current time. The optional fourth argument {@link args[3]} is the object's priority for
+	 * a priority queue, or its due time for an event list (the current time by default); it is ignored for other queues.
+	 * Generates an error if the arguments are invalid.
+	 * 
+	 * @param args the arguments to this call of offer
+	 * @param context the NetLogo context
+	 * @return true if the object was admitted
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+		}
+		Queue q = (Queue)arg0;
+		Object arg1 = args[1].get();
+		double arg2;
+		try {
+			arg2 = args[2].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[2]));
+		}
+		double arg3 = (q.strategy == Queue.EVENT) ? arg2 : 0.0;
+		if (args.length > 3) {
+			try {
+				arg3 = args[3].getDoubleValue();
+			}
+			catch (LogoException e) {
+				throw new ExtensionException ("not a number: " + Dump.logoObject(args[3]));
+			}
+		}
+		// throws an ExtensionException if the time value of arg2 is BEFORE the
+		// time of last change in the queue (i.e. if simulation time is running backwards)
+		q.setRandom(context.getRNG());
+		boolean admitted = q.enqueue(arg1, arg3, arg2);
+		q.runCallbacks(context);
+		return Boolean.valueOf(admitted);
+	}
+
+}
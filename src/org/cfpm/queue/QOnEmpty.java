@@ -0,0 +1,54 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.AnonymousCommand;
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Nobody$;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QOnEmpty implements Command {
+
+	/** The on-empty primitive expects a queue and an anonymous command (or nobody) as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.CommandType() | Syntax.NobodyType()});
+	}
+
+	/** Registers a command to be run whenever the queue runs empty, replacing the command registered before (if any).
+	 * First argument {@link args[0]} has to be a queue, second argument {@link args[1]} has to be an anonymous command,
+	 * which is run with the queue as input right after the primitive that removed the last element, or nobody to 
+	 * remove the registered command.
+	 * 
+	 *  @param args the arguments to this call of on-empty
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are of the wrong type
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		Object arg1 = args[1].get();
+		if (! (arg1 instanceof AnonymousCommand) && arg1 != Nobody$.MODULE$) {
+			throw new ExtensionException ("not a command: " + Dump.logoObject(arg1));
+		}
+		AnonymousCommand command = (arg1 instanceof AnonymousCommand) ? (AnonymousCommand)arg1 : null;
+		((Queue)arg0).onEmpty(command);
+	}
+
+}
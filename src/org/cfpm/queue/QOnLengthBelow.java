@@ -0,0 +1,62 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.AnonymousCommand;
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Nobody$;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QOnLengthBelow implements Command {
+
+	/** The on-length-below primitive expects a queue, a length and an anonymous command (or nobody) as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType(), Syntax.CommandType() | Syntax.NobodyType()});
+	}
+
+	/** Registers a command to be run whenever the length of the queue falls below a threshold, replacing the command
+	 * registered before (if any). First argument {@link args[0]} has to be a queue, second argument {@link args[1]} has
+	 * to be the threshold, third argument {@link args[2]} has to be an anonymous command, which is run with the queue 
+	 * as input right after the primitive that made the queue shorter than the threshold, or nobody
+	 * to remove the registered command.
+	 * 
+	 *  @param args the arguments to this call of on-length-below
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are of the wrong type
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		int arg1;
+		try {
+			arg1 = args[1].getIntValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[1]));
+		}
+		Object arg2 = args[2].get();
+		if (! (arg2 instanceof AnonymousCommand) && arg2 != Nobody$.MODULE$) {
+			throw new ExtensionException ("not a command: " + Dump.logoObject(arg2));
+		}
+		AnonymousCommand command = (arg2 instanceof AnonymousCommand) ? (AnonymousCommand)arg2 : null;
+		((Queue)arg0).onLengthBelow(arg1, command);
+	}
+
+}
@@ -0,0 +1,56 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QPosition implements Reporter {
+
+	/** The position primitive expects a queue and an object as input and returns the position of the object in the 
+	 * queue (or false if it is not in the queue).
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.WildcardType()}, 
+				Syntax.NumberType() | Syntax.BooleanType());
+	}
+	
+	/** Returns the position of the given object in the specified queue, with 0 being the first object to leave 
+	 * the queue, or false if the object is not in the queue (like NetLogo's position for lists). If the object is 
+	 * in the queue more than once, the position of the first one to leave is returned. The first argument 
+	 * {@link args[0]} has to be a queue, the second argument {@link args[1]} can be any object (agents are looked 
+	 * up by identity, other objects by value). Like member?, the first call builds an index of the queue.
+	 * Generates an error if the argument is invalid.
+	 * 
+	 * @param args the arguments to this call of position
+	 * @param context the NetLogo context
+	 * @return the position of the object or false
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+	      Object arg0 = args[0].get();
+	      if (!(arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+	      }
+	      int position = ((Queue) arg0).position(args[1].get());
+	      if (position < 0) {
+	    	  return Boolean.FALSE;
+	      }
+	      return Double.valueOf(position);
+	}
+
+}
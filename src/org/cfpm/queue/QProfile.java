@@ -0,0 +1,70 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.LogoListBuilder;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QProfile implements Reporter {
+	
+	private Profiler profiler;
+	
+	public QProfile(Profiler profiler) {
+		this.profiler = profiler;
+	}
+	
+	/** The profile primitive expects no input and returns a list of profiling results.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{}, Syntax.ListType());
+	}
+
+	/** Returns what has been measured since profiling was last switched on (see set-profiling), as a list of two lists.
+	 * The first one has an entry [name calls total-time p99-latency] for each primitive that has been called, with 
+	 * the times in milliseconds. The second one has an entry [queue inserted removed throughput] for each queue that 
+	 * has been an input of a primitive, giving the number of elements inserted and removed (including cancelled and 
+	 * dropped ones) and the number of elements inserted or removed per second of running time.
+	 * 
+	 * @param args the arguments to this call of profile
+	 * @param context the NetLogo context
+	 * @return a list of profiling results
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		LogoListBuilder primitives = new LogoListBuilder();
+		for (Object[] entry : this.profiler.getPrimitiveStats()) {
+			primitives.add(toLogoList(entry));
+		}
+		LogoListBuilder queues = new LogoListBuilder();
+		for (Object[] entry : this.profiler.getQueueStats()) {
+			queues.add(toLogoList(entry));
+		}
+		LogoListBuilder result = new LogoListBuilder();
+		result.add(primitives.toLogoList());
+		result.add(queues.toLogoList());
+		return result.toLogoList();
+	}
+	
+	private static Object toLogoList(Object[] values) {
+		LogoListBuilder list = new LogoListBuilder();
+		for (Object value : values) {
+			list.add(value);
+		}
+		return list.toLogoList();
+	}
+
+}
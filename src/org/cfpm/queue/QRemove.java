@@ -49,16 +49,17 @@ public class QRemove implements Reporter {
 		double arg1;
 		try {
 			arg1 = args[1].getDoubleValue();
-			Object elem = q.dequeue(arg1);
-			if (elem == null) {
-				// turn it into nobody
-				return Nobody$.MODULE$;
-			}
-			return elem;
 		}
 		catch (LogoException e) {
 			throw new ExtensionException ("not a number: " + Dump.logoObject(args[1]));
 		}
+		Object elem = q.dequeue(arg1);
+		q.runCallbacks(context);
+		if (elem == null) {
+			// turn it into nobody
+			return Nobody$.MODULE$;
+		}
+		return elem;
 	}
 
 }
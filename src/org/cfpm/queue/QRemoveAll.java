@@ -0,0 +1,64 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.LogoListBuilder;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QRemoveAll implements Reporter {
+	
+	/** The remove-all primitive expects a queue and the current time as input and returns a list of all objects
+	 *  in the queue.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType()}, Syntax.ListType());
+	}
+	
+
+	/** Removes all elements from the specified queue and returns them as a list, in the order of removal. 
+	 * The first argument {@link args[0]} has to be a queue, the second argument {@link args[1]} has to be a 
+	 * double value representing the current time.
+	 * Generates an error if the arguments are invalid.
+	 * 
+	 * @param args the arguments to this call of remove-all
+	 * @param context the NetLogo context
+	 * @return the list of removed elements
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		Queue q = (Queue)arg0;
+		double arg1;
+		try {
+			arg1 = args[1].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[1]));
+		}
+		LogoListBuilder list = new LogoListBuilder();
+		for (Object elem : q.dequeue(q.size(), arg1)) {
+			list.add(elem);
+		}
+		q.runCallbacks(context);
+		return list.toLogoList();
+	}
+
+}
@@ -0,0 +1,54 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.LogoListBuilder;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QRenegeStats implements Reporter {
+	
+	/** The renege-stats primitive expects a queue as input and returns a list of reneging statistics.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType()}, Syntax.ListType());
+	}
+
+	/** Returns a list of statistical measures of the objects cancelled in the specified queue since the last reset, 
+	 * in the following order: number of cancelled objects, mean time in the queue before cancelling, max time in the 
+	 * queue before cancelling, number of objects that have expired (which are included in the cancelled ones). 
+	 * The first argument {@link args[0]} has to be a queue.
+	 * Generates an error if the argument is invalid.
+	 * 
+	 * @param args the arguments to this call of renege-stats
+	 * @param context the NetLogo context
+	 * @return a list of reneging statistics
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+	    if (!(arg0 instanceof Queue)) {
+	    	throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+	    }
+	    LogoListBuilder list = new LogoListBuilder();
+	    for (double value : ((Queue)arg0).getRenegeStats()) {
+	    	list.add(Double.valueOf(value));
+	    }
+		return list.toLogoList();
+	}
+
+}
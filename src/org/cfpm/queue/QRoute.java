@@ -0,0 +1,107 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.LogoList;
+import org.nlogo.core.Nobody$;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QRoute implements Reporter {
+
+	/** The route primitive expects a queue, a routing table (a list of target queues) and the current time as input and 
+	 * returns the transferred object.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.ListType(), Syntax.NumberType()}, 
+				Syntax.WildcardType());
+	}
+	
+	/** Moves the first element of the queue into one of the target queues of the routing table, chosen at random, 
+	 * and returns it (or nobody if the queue is empty, or if the chosen target has limited capacity and does not admit 
+	 * the element, which then stays in the queue). The first argument {@link args[0]} has to be a queue, the 
+	 * second argument {@link args[1]} has to be a list whose items are either target queues or pairs [queue weight]; 
+	 * a target is chosen with a probability proportional to its weight (1 for a plain queue), using NetLogo's random 
+	 * number generator. The third argument {@link args[2]} has to be a double value representing the current time.
+	 * Generates an error if the arguments are invalid.
+	 * 
+	 * @param args the arguments to this call of route
+	 * @param context the NetLogo context
+	 * @return the transferred element
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		Queue q = (Queue)arg0;
+		LogoList table = args[1].getList();
+		Queue[] targets = new Queue[table.size()];
+		double[] weights = new double[table.size()];
+		double totalWeight = 0;
+		for (int i = 0; i < targets.length; i++) {
+			Object entry = table.get(i);
+			Object target = entry;
+			double weight = 1.0;
+			if (entry instanceof LogoList && ((LogoList)entry).size() == 2) {
+				target = ((LogoList)entry).get(0);
+				Object w = ((LogoList)entry).get(1);
+				if (! (w instanceof Double) || ! (((Double)w).doubleValue() >= 0)) {
+					throw new ExtensionException ("not a valid routing weight: " + Dump.logoObject(w));
+				}
+				weight = ((Double)w).doubleValue();
+			}
+			if (! (target instanceof Queue)) {
+		        throw new ExtensionException ("not a queue: " + Dump.logoObject(target));			
+			}
+			targets[i] = (Queue)target;
+			weights[i] = weight;
+			totalWeight += weight;
+		}
+		if (! (totalWeight > 0)) {
+			throw new ExtensionException ("empty routing table: " + Dump.logoObject(table));
+		}
+		double arg2;
+		try {
+			arg2 = args[2].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[2]));
+		}
+		if (q.size() == 0) {
+			return Nobody$.MODULE$;
+		}
+		// choose the target
+		double r = context.getRNG().nextDouble() * totalWeight;
+		int i = 0;
+		while (i < targets.length - 1 && (r >= weights[i] || weights[i] == 0)) {
+			r -= weights[i];
+			i++;
+		}
+		targets[i].setRandom(context.getRNG());
+		Object elem = q.transferTo(targets[i], arg2);
+		q.runCallbacks(context);
+		targets[i].runCallbacks(context);
+		if (elem == null) {
+			// not admitted by the target
+			return Nobody$.MODULE$;
+		}
+		return elem;
+	}
+
+}
@@ -0,0 +1,75 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QSchedule implements Command {
+
+	/** The schedule primitive expects an event list, the object to be scheduled, its due time and (optionally)
+	 * the current time (as double) as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.WildcardType(), Syntax.NumberType(), 
+				Syntax.NumberType() | Syntax.RepeatableType()}, 3);
+	}
+	
+	
+	/** Performs the scheduling. First argument {@link args[0]} has to be a queue with EVENT strategy, second argument
+	 * {@link args[1]} has to be the object to be scheduled, third argument {@link args[2]} has to be its due time.
+	 * The optional fourth argument {@link args[3]} is the current time; if it is omitted, the event list's time
+	 * of last change is used as scheduling time.
+	 * 
+	 *  @param args the arguments to this call of schedule
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are of the wrong type
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		Queue q = (Queue)arg0;
+		if (q.strategy != Queue.EVENT) {
+			throw new ExtensionException ("not an event list: " + Dump.logoObject(arg0));
+		}
+		Object arg1 = args[1].get();
+		double arg2;
+		double arg3 = q.stats.timeOfLastChange;
+		try {
+			arg2 = args[2].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[2]));
+		}
+		if (args.length > 3) {
+			try {
+				arg3 = args[3].getDoubleValue();
+			}
+			catch (LogoException e) {
+				throw new ExtensionException ("not a number: " + Dump.logoObject(args[3]));
+			}
+		}
+		// throws an ExtensionException if the time value of arg3 is BEFORE the
+		// time of last change in the queue (i.e. if simulation time is running backwards)
+		q.setRandom(context.getRNG());
+		q.schedule(arg1, arg2, arg3);
+		q.runCallbacks(context);
+	}
+
+}
@@ -0,0 +1,84 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.LogoListBuilder;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QServe implements Reporter {
+	
+	/** The serve primitive expects a service station and the current time as input and returns a list of two lists
+	 * (the completed and the started services).
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType()}, Syntax.ListType());
+	}
+	
+
+	/** Lets the servers of the specified queue work up to the current time: all services ending at or before the current 
+	 * time are completed, and free servers start serving the waiting elements (in the order in which they leave the 
+	 * queue) until all servers are busy or the queue is empty. A server freed by a completed service takes the next 
+	 * element as soon as that service ends, servers that were idle take one at the current time. Returns a list of two lists: the elements whose service 
+	 * was completed, in the order of completion, and the elements whose service was started. The first argument 
+	 * {@link args[0]} has to be a queue with servers set up by set-servers, the second argument {@link args[1]} has to 
+	 * be a double value representing the current time.
+	 * Generates an error if the arguments are invalid.
+	 * 
+	 * @param args the arguments to this call of serve
+	 * @param context the NetLogo context
+	 * @return the list of completed and started elements
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		Queue q = (Queue)arg0;
+		if (q.station == null) {
+			throw new ExtensionException ("not a service station: " + Dump.logoObject(arg0));
+		}
+		double arg1;
+		try {
+			arg1 = args[1].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[1]));
+		}
+		List<Object> completed = new ArrayList<Object>();
+		List<Object> started = new ArrayList<Object>();
+		q.serve(arg1, context, completed, started);
+		q.runCallbacks(context);
+		LogoListBuilder result = new LogoListBuilder();
+		result.add(toLogoList(completed));
+		result.add(toLogoList(started));
+		return result.toLogoList();
+	}
+	
+	private static Object toLogoList(List<Object> elems) {
+		LogoListBuilder list = new LogoListBuilder();
+		for (Object elem : elems) {
+			list.add(elem);
+		}
+		return list.toLogoList();
+	}
+
+}
@@ -0,0 +1,52 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QSetProfiling implements Command {
+
+	private Profiler profiler;
+	
+	public QSetProfiling(Profiler profiler) {
+		this.profiler = profiler;
+	}
+	
+	/** The set-profiling primitive expects a boolean as input.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.BooleanType()});
+	}
+
+	/** Switches profiling of the extension's primitives on or off for this model. The argument {@link args[0]} has to
+	 * be true or false. Switching profiling on starts afresh; switching it off keeps the measurements, which can then
+	 * be reported by profile. While profiling is off, the primitives run as fast as without profiling.
+	 * 
+	 *  @param args the arguments to this call of set-profiling
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are of the wrong type
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Boolean)) {
+	        throw new ExtensionException ("not a boolean: " + Dump.logoObject(arg0));
+		}
+		this.profiler.setEnabled(((Boolean)arg0).booleanValue());
+	}
+
+}
@@ -0,0 +1,71 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QSetRed implements Command {
+
+	/** The set-red primitive expects a queue, the min and max threshold of the average length, the max drop probability
+	 * and (optionally) the weight of the current length in the average as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType(), Syntax.NumberType(),
+				Syntax.NumberType(), Syntax.NumberType() | Syntax.RepeatableType()}, 4);
+	}
+
+	/** Sets the parameters of random early detection for a queue that was created with drop policy 3. First argument
+	 * {@link args[0]} has to be the queue, second and third argument {@link args[1]} and {@link args[2]} have to be
+	 * the thresholds of the average queue length between which arriving objects are dropped at random, fourth argument
+	 * {@link args[3]} has to be the probability of a drop just below the max threshold (from the max threshold on, all
+	 * arriving objects are dropped). The optional fifth argument {@link args[4]} is the weight of the current length
+	 * in the moving average, which is updated at each arrival (default 0.002).
+	 * 
+	 *  @param args the arguments to this call of set-red
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are of the wrong type
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+		}
+		Queue q = (Queue)arg0;
+		double[] values = new double[4];
+		values[3] = 0.002;
+		for (int i = 1; i < args.length; i++) {
+			try {
+				values[i - 1] = args[i].getDoubleValue();
+			}
+			catch (LogoException e) {
+				throw new ExtensionException ("not a number: " + Dump.logoObject(args[i]));
+			}
+		}
+		if (! (values[0] >= 0 && values[1] > values[0])) {
+			throw new ExtensionException (values[0] + " and " + values[1] + " are not valid thresholds.");
+		}
+		if (! (values[2] > 0 && values[2] <= 1)) {
+			throw new ExtensionException (values[2] + " is not a valid drop probability.");
+		}
+		if (! (values[3] > 0 && values[3] <= 1)) {
+			throw new ExtensionException (values[3] + " is not a valid weight.");
+		}
+		q.setRed(values[0], values[1], values[2], values[3]);
+	}
+
+}
@@ -0,0 +1,86 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.AnonymousReporter;
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QSetServers implements Command {
+
+	/** The set-servers primitive expects a queue, the number of servers and the service time (a number or an anonymous 
+	 * reporter) as inputs, and optionally the current time.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType(), 
+				Syntax.NumberType() | Syntax.ReporterType(), Syntax.NumberType() | Syntax.RepeatableType()}, 3);
+	}
+
+	/** Makes a queue a service station with a number of servers, which serve the waiting elements when serve is called.
+	 * First argument {@link args[0]} has to be a queue (but not an event list), second argument {@link args[1]} has to 
+	 * be the number of servers. The third argument {@link args[2]} is the service time: either a (non-negative) number, 
+	 * or an anonymous reporter that is called with the element when its service starts and reports its service time.
+	 * If the queue already has servers, their number and the service time are changed; services in progress are 
+	 * not affected. The optional fourth argument {@link args[3]} is the time of the change (the queue's time of last 
+	 * change by default), from which the utilisation counts the new number of servers.
+	 * 
+	 *  @param args the arguments to this call of set-servers
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are of the wrong type
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		Queue q = (Queue)arg0;
+		int arg1;
+		try {
+			arg1 = args[1].getIntValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[1]));
+		}
+		if (arg1 < 1) {
+			throw new ExtensionException (arg1 + " is not a valid number of servers.");
+		}
+		double arg3 = q.stats.timeOfLastChange;
+		if (args.length > 3) {
+			try {
+				arg3 = args[3].getDoubleValue();
+			}
+			catch (LogoException e) {
+				throw new ExtensionException ("not a number: " + Dump.logoObject(args[3]));
+			}
+		}
+		Object arg2 = args[2].get();
+		if (arg2 instanceof AnonymousReporter) {
+			q.setServers(arg1, 0.0, (AnonymousReporter)arg2, arg3);
+		}
+		else if (arg2 instanceof Double) {
+			double serviceTime = ((Double)arg2).doubleValue();
+			if (! (serviceTime >= 0)) {
+				throw new ExtensionException (serviceTime + " is not a valid service time.");
+			}
+			q.setServers(arg1, serviceTime, null, arg3);
+		}
+		else {
+			throw new ExtensionException ("not a number or reporter: " + Dump.logoObject(arg2));
+		}
+	}
+
+}
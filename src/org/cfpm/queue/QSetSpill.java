@@ -0,0 +1,60 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QSetSpill implements Command {
+
+	/** The set-spill primitive expects a FIFO queue and a segment length as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType()});
+	}
+
+	/** Makes a FIFO queue spill to disk, for queues that would not fit into memory. First argument {@link args[0]} has 
+	 * to be a FIFO queue, second argument {@link args[1]} has to be the (positive) number of elements per segment.
+	 * Only the first and the last segment of the queue are kept in memory, the segments in between are written to 
+	 * temporary files. Elements of such a queue have to be numbers, strings, booleans or turtles, and the queue cannot 
+	 * track sojourn times.
+	 * 
+	 *  @param args the arguments to this call of set-spill
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are of the wrong type, or the queue contains elements
+	 *  that cannot be spilled or tracks sojourn times
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		Queue q = (Queue)arg0;
+		int arg1;
+		try {
+			arg1 = args[1].getIntValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[1]));
+		}
+		if (arg1 < 1) {
+			throw new ExtensionException (arg1 + " is not a valid segment length.");
+		}
+		q.setSpill(arg1);
+	}
+
+}
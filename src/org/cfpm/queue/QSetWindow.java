@@ -0,0 +1,71 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QSetWindow implements Command {
+
+	/** The set-window primitive expects a queue, the width of the time window and (optionally) the number of buckets
+	 * as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType(), 
+				Syntax.NumberType() | Syntax.RepeatableType()}, 2);
+	}
+
+	/** Sets up statistics over a trailing time window. First argument {@link args[0]} has to be a queue, second argument
+	 * {@link args[1]} has to be the (positive) width of the window. The optional third argument {@link args[2]} is the
+	 * number of buckets the window is divided into (default 20); the window slides in steps of one bucket.
+	 * 
+	 *  @param args the arguments to this call of set-window
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are of the wrong type
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		Queue q = (Queue)arg0;
+		double arg1;
+		int arg2 = SlidingWindow.DEFAULT_NUM_BUCKETS;
+		try {
+			arg1 = args[1].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[1]));
+		}
+		if (! (arg1 > 0)) {
+			throw new ExtensionException (arg1 + " is not a valid window width.");
+		}
+		if (args.length > 2) {
+			try {
+				arg2 = args[2].getIntValue();
+			}
+			catch (LogoException e) {
+				throw new ExtensionException ("not a number: " + Dump.logoObject(args[2]));
+			}
+			if (arg2 < 1) {
+				throw new ExtensionException (arg2 + " is not a valid number of buckets.");
+			}
+		}
+		q.setWindow(arg1, arg2);
+	}
+
+}
@@ -18,15 +18,19 @@ import org.nlogo.core.SyntaxJ;
  */
 public class QShow implements Reporter {
 
-	/** The show primitive expects a queue as input and returns a String representation of this queue.
+	/** The show primitive expects a queue and (optionally) the maximum number of elements to show as input and 
+	 * returns a String representation of this queue.
 	 * 
 	 */
 	public Syntax getSyntax() {
-		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType()}, Syntax.StringType());
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType() | Syntax.RepeatableType()}, 
+				Syntax.StringType(), 1);
 	}
 	
 	/** Returns a String representation of the specified queue. The first argument 
-	 * {@link args[0]} has to be a queue.
+	 * {@link args[0]} has to be a queue. The optional second argument {@link args[1]} is the maximum number of 
+	 * elements to show (from the head of the queue); the number of elements left out is appended.
+	 * Unless the queue has changed, the representation is not built again.
 	 * Generates an error if the argument is invalid.
 	 * 
 	 * @param args the arguments to this call of show
@@ -41,7 +45,19 @@ public class QShow implements Reporter {
 	    if (!(arg0 instanceof Queue)) {
 	    	throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
 	    }
-		return ((Queue)arg0).toString();
+	    int maxElements = Integer.MAX_VALUE;
+	    if (args.length > 1) {
+	    	try {
+	    		maxElements = args[1].getIntValue();
+	    	}
+	    	catch (LogoException e) {
+	    		throw new ExtensionException ("not a number: " + Dump.logoObject(args[1]));
+	    	}
+	    	if (maxElements < 0) {
+	    		throw new ExtensionException (maxElements + " is not a valid number of elements.");
+	    	}
+	    }
+		return ((Queue)arg0).render(maxElements);
 	}
 
 }
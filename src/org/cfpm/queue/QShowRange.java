@@ -0,0 +1,70 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QShowRange implements Reporter {
+
+	/** The show-range primitive expects a queue, a start position and a number of elements as input and returns a 
+	 * String representation of this part of the queue.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType(), Syntax.NumberType()}, 
+				Syntax.StringType());
+	}
+	
+	/** Returns a String representation of a part of the specified queue, e.g. to page through a long queue. The first 
+	 * argument {@link args[0]} has to be a queue, the second argument {@link args[1]} the position of the first element 
+	 * to show (0 being the head of the queue) and the third argument {@link args[2]} the number of elements to show.
+	 * Generates an error if the arguments are invalid.
+	 * 
+	 * @param args the arguments to this call of show-range
+	 * @param context the NetLogo context
+	 * @return a String representation of the elements in the range
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+	    Object arg0 = args[0].get();
+	    if (!(arg0 instanceof Queue)) {
+	    	throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+	    }
+	    int arg1;
+	    int arg2;
+	    try {
+	    	arg1 = args[1].getIntValue();
+	    }
+	    catch (LogoException e) {
+	    	throw new ExtensionException ("not a number: " + Dump.logoObject(args[1]));
+	    }
+	    try {
+	    	arg2 = args[2].getIntValue();
+	    }
+	    catch (LogoException e) {
+	    	throw new ExtensionException ("not a number: " + Dump.logoObject(args[2]));
+	    }
+	    if (arg1 < 0) {
+	    	throw new ExtensionException (arg1 + " is not a valid position.");
+	    }
+	    if (arg2 < 0) {
+	    	throw new ExtensionException (arg2 + " is not a valid number of elements.");
+	    }
+		return ((Queue)arg0).render(arg1, arg2);
+	}
+
+}
@@ -0,0 +1,58 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.LogoListBuilder;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QSojournStats implements Reporter {
+	
+	/** The sojourn-stats primitive expects a queue as input and returns a list of sojourn time statistics.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType()}, Syntax.ListType());
+	}
+
+	/** Returns a list of statistical measures of the end-to-end sojourn time in the network of the specified queue, 
+	 * in the following order: number of elements that have left the network, mean sojourn time, max sojourn time,
+	 * min sojourn time. The first argument {@link args[0]} has to be a queue that is part of a network set up by 
+	 * track-sojourn.
+	 * Generates an error if the argument is invalid.
+	 * 
+	 * @param args the arguments to this call of sojourn-stats
+	 * @param context the NetLogo context
+	 * @return a list of sojourn time statistics
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+	    if (!(arg0 instanceof Queue)) {
+	    	throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+	    }
+		Queue q = (Queue)arg0;
+		if (q.sojourn == null) {
+			throw new ExtensionException ("sojourn time is not tracked for queue: " + Dump.logoObject(arg0));
+		}
+	    LogoListBuilder list = new LogoListBuilder();
+	    for (double value : q.getSojournStats()) {
+	    	list.add(Double.valueOf(value));
+	    }
+		return list.toLogoList();
+	}
+
+}
@@ -0,0 +1,59 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QThroughput implements Reporter {
+
+	/** The throughput primitive expects a service station and the current time as input and returns a number (the number of completed services per time unit).
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType()}, Syntax.NumberType());
+	}
+	
+	/** Returns the number of services per time unit completed by the servers of the specified queue up to the current time. 
+	 * The first argument {@link args[0]} has to be a queue with servers set up by set-servers, the second argument 
+	 * {@link args[1]} has to be a double value representing the current time.
+	 * Generates an error if the arguments are invalid.
+	 * 
+	 * @param args the arguments to this call of throughput
+	 * @param context the NetLogo context
+	 * @return the throughput of the servers
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+	    Object arg0 = args[0].get();
+	    if (!(arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+	    }
+	    Queue q = (Queue)arg0;
+	    if (q.station == null) {
+	    	throw new ExtensionException ("not a service station: " + Dump.logoObject(arg0));
+	    }
+	    double arg1;
+	    try {
+	    	arg1 = args[1].getDoubleValue();
+	    }
+	    catch (LogoException e) {
+	    	throw new ExtensionException ("not a number: " + Dump.logoObject(args[1]));
+	    }
+		return Double.valueOf(q.getThroughput(arg1));
+	}
+
+}
@@ -0,0 +1,67 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import java.net.MalformedURLException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QTraceStart implements Command {
+
+	/** The trace-start primitive expects a queue and a file name as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.StringType()});
+	}
+
+	/** Starts writing a binary trace of the arrivals and departures of a queue to a file. First argument {@link args[0]} 
+	 * has to be the queue, second argument {@link args[1]} has to be the name of the file (relative to the directory 
+	 * of the model), which is replaced if it exists. Every arrival, departure, cancelled or expired element and dropped 
+	 * element is written as a record of 32 bytes (see {@link TraceFile}) until trace-stop is called.
+	 * 
+	 *  @param args the arguments to this call of trace-start
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are of the wrong type, or the file cannot be created
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+		}
+		Queue q = (Queue)arg0;
+		String arg1;
+		try {
+			arg1 = args[1].getString();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a string: " + Dump.logoObject(args[1]));
+		}
+		Path path;
+		try {
+			path = Paths.get(context.attachCurrentDirectory(arg1));
+		}
+		catch (MalformedURLException | InvalidPathException e) {
+			throw new ExtensionException (arg1 + " is not a valid file name.");
+		}
+		q.startTrace(path);
+	}
+
+}
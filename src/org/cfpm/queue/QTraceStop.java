@@ -0,0 +1,45 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QTraceStop implements Command {
+
+	/** The trace-stop primitive expects a queue as input.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType()});
+	}
+
+	/** Stops writing the trace of a queue that was started by trace-start and closes the trace file. Argument 
+	 * {@link args[0]} has to be the queue. Does nothing if the queue is not traced.
+	 * 
+	 *  @param args the arguments to this call of trace-stop
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if the argument is of the wrong type, or the file cannot be closed
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+		}
+		((Queue)arg0).stopTrace();
+	}
+
+}
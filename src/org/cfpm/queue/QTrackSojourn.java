@@ -0,0 +1,54 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Command;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.LogoList;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QTrackSojourn implements Command {
+
+	/** The track-sojourn primitive expects a list of queues as input.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.ListType()});
+	}
+
+	/** Starts tracking the end-to-end sojourn time in the network formed by the given queues. The argument 
+	 * {@link args[0]} has to be a list of queues. An element enters the network when it is inserted into one of the 
+	 * queues and leaves it when it is removed from one of them (or its service is completed), unless it is moved 
+	 * to another queue of the network by transfer or route. Queues that were part of another network leave it. 
+	 * Queues that spill to disk cannot be part of a network.
+	 * 
+	 *  @param args the arguments to this call of track-sojourn
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are of the wrong type, or a queue spills to disk
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		LogoList list = args[0].getList();
+		Queue[] network = new Queue[list.size()];
+		for (int i = 0; i < network.length; i++) {
+			Object item = list.get(i);
+			if (! (item instanceof Queue)) {
+		        throw new ExtensionException ("not a queue: " + Dump.logoObject(item));			
+			}
+			network[i] = (Queue)item;
+		}
+		Queue.trackSojourn(network);
+	}
+
+}
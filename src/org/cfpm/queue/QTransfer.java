@@ -0,0 +1,71 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Nobody$;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QTransfer implements Reporter {
+
+	/** The transfer primitive expects two queues and the current time as input and returns the transferred object.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.WildcardType(), Syntax.NumberType()}, 
+				Syntax.WildcardType());
+	}
+	
+	/** Moves the first element of the first queue into the second queue in one step, updating the statistics of both 
+	 * queues, and returns it (or nobody if the first queue is empty). If the second queue has limited capacity and 
+	 * does not admit the element, it stays in the first queue and nobody is returned. The first two arguments {@link args[0]} and 
+	 * {@link args[1]} have to be queues, the third argument {@link args[2]} has to be a double value representing 
+	 * the current time.
+	 * Generates an error if the arguments are invalid.
+	 * 
+	 * @param args the arguments to this call of transfer
+	 * @param context the NetLogo context
+	 * @return the transferred element
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));			
+		}
+		Object arg1 = args[1].get();
+		if (! (arg1 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg1));			
+		}
+		double arg2;
+		try {
+			arg2 = args[2].getDoubleValue();
+		}
+		catch (LogoException e) {
+			throw new ExtensionException ("not a number: " + Dump.logoObject(args[2]));
+		}
+		((Queue)arg1).setRandom(context.getRNG());
+		Object elem = ((Queue)arg0).transferTo((Queue)arg1, arg2);
+		((Queue)arg0).runCallbacks(context);
+		((Queue)arg1).runCallbacks(context);
+		if (elem == null) {
+			// turn it into nobody
+			return Nobody$.MODULE$;
+		}
+		return elem;
+	}
+
+}
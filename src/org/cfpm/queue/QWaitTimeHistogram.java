@@ -0,0 +1,56 @@
+/**
+ * 
+ */
+package org.cfpm.queue;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Reporter;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.LogoListBuilder;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * @author Ruth Meyer
+ *
+ */
+public class QWaitTimeHistogram implements Reporter {
+
+	/** The wt-histogram primitive expects a queue as input and returns a list of [lower-bound count] pairs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType()}, Syntax.ListType());
+	}
+	
+	/** Returns the wait time histogram of the specified queue as a list of [lower-bound count] pairs, one for each
+	 * non-empty bucket, in increasing order of the lower bound. Wait times less than or equal to 0 are counted in a 
+	 * bucket with lower bound 0. The first argument {@link args[0]} has to be a queue.
+	 * Generates an error if the argument is invalid.
+	 * 
+	 * @param args the arguments to this call of wt-histogram
+	 * @param context the NetLogo context
+	 * @return the wait time histogram of the queue
+	 * @throw ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+	    Object arg0 = args[0].get();
+	    if (!(arg0 instanceof Queue)) {
+	        throw new ExtensionException ("not a queue: " + Dump.logoObject(arg0));
+	    }
+	    LogoListBuilder list = new LogoListBuilder();
+	    for (double[] bucket : ((Queue)arg0).getWaitTimeHistogram()) {
+	    	LogoListBuilder pair = new LogoListBuilder();
+	    	pair.add(Double.valueOf(bucket[0]));
+	    	pair.add(Double.valueOf(bucket[1]));
+	    	list.add(pair.toLogoList());
+	    }
+		return list.toLogoList();
+	}
+
+}
@@ -3,11 +3,19 @@
  */
 package org.cfpm.queue;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
+import org.nlogo.api.AnonymousCommand;
+import org.nlogo.api.AnonymousReporter;
+import org.nlogo.api.Context;
 import org.nlogo.api.ExtensionException;
+import org.nlogo.api.MersenneTwisterFast;
 import org.nlogo.core.ExtensionObject;
 
 /**
@@ -18,20 +26,76 @@ public class Queue implements ExtensionObject {
 		
 	public final static int FIFO = 0;
 	public final static int LIFO = 1;
+	public final static int PRIORITY = 2;
+	public final static int EVENT = 3;
 	
+	// drop policies of a queue with limited capacity, i.e. what happens when an element arrives at a full queue: 
+	// it is rejected (balks), the element that would leave last (possibly the arriving one) is dropped, the element
+	// that would leave next is dropped, or arrivals are dropped at random before the queue is full (random early detection)
+	public final static int REJECT = 0;
+	public final static int DROP_TAIL = 1;
+	public final static int DROP_HEAD = 2;
+	public final static int RED = 3;
 	
+	/** Initial capacity of the backing arrays (has to be a power of two). */
+	final static int INITIAL_CAPACITY = 16;
+	
+	/** Largest length of the backing arrays preallocated for a queue with limited capacity (a power of two); 
+	 * a queue with a larger capacity grows beyond it on demand. */
+	final static int MAX_PREALLOCATED = 1 << 20;
+	
+	/** Id used to refer to this queue when exporting the world (-1 if it has not been registered yet). */
+	long id = -1;
 	int strategy;
-	List<QElem> q;
-	int insertionIndex;
-	// statistics measures
-	double maxWaitTime;
-	double minWaitTime;
-	double totalWaitTime;
-	int maxSize;
-	double totalTimeWeightedLength;
-	int numInserts;
-	double timeOfLastChange;
-	double initTime;
+	// the queue is stored as two parallel circular arrays, holding the queued objects and their insertion times;
+	// the head of the queue is at index head, the following elements are at (head + i) & (elems.length - 1) for i < count
+	Object[] elems;
+	double[] times;
+	int head;
+	int count;
+	// with PRIORITY strategy, elems and times form a binary min-heap (head is always 0); the parallel arrays
+	// priorities and seqNos hold each element's priority and insertion number (used for FIFO tie-breaking)
+	double[] priorities;
+	long[] seqNos;
+	long nextSeqNo;
+	// insertion number of the first element of a FIFO queue (the following ones are numbered consecutively);
+	// LIFO queues only keep insertion numbers in seqNos once handles are used
+	long headSeqNo;
+	// elements that can be cancelled, by handle (i.e. insertion number), and handles of cancelled elements that are 
+	// still in the backing store: they are only removed when they reach the head (null until handles are used)
+	Map<Long, QElem> handles;
+	HashSet<Long> cancelled;
+	int numCancelled;
+	// index for membership and position queries (null until it is first needed)
+	MemberIndex index;
+	// deadlines of the elements with limited patience (null until such an element is inserted)
+	DeadlineHeap deadlines;
+	// class of each element (parallel to elems, untagged elements being of class 0) and statistics per class 
+	// (both null until an element is inserted with a class tag)
+	int[] classIds;
+	ClassStats classStats;
+	// with EVENT strategy, the elements are kept in a calendar queue ordered by due time instead
+	CalendarQueue calendar;
+	// a FIFO queue that spills to disk keeps its elements in a spill store instead (null otherwise)
+	SpillStore spill;
+	// capacity and drop policy of a queue with limited capacity (null if unlimited)
+	AdmissionControl admission;
+	// statistics measures (including those over a trailing time window, if set up)
+	QueueStats stats;
+	// servers of a service station (only if set up)
+	ServiceStation station;
+	// tracker of the end-to-end sojourn time in a network of queues (shared by all queues of the network, if set up)
+	SojournTracker sojourn;
+	// the group this queue belongs to (if any), which is told whenever the length changes, and the index in the group
+	QueueGroup group;
+	int groupIndex;
+	// commands to be run when the length crosses a threshold etc. (null if none are registered)
+	Callbacks callbacks;
+	// binary trace of the arrivals and departures (null unless tracing)
+	TraceFile trace;
+	// the last rendering of the queue (for at most renderedLimit elements), dropped whenever the elements change
+	String rendered;
+	int renderedLimit;
 	
 	
 	/** Default empty constructor: creates a new empty queue with FIFO strategy.
@@ -48,6 +112,14 @@ public class Queue implements ExtensionObject {
 		init(strategy);
 	}
 	
+	/** Constructor: creates a new empty queue with the specified strategy, which holds at most capacity elements 
+	 * and handles arrivals at the full queue according to the given drop policy.
+	 */
+	public Queue(int strategy, int capacity, int dropPolicy) {
+		init(strategy);
+		setCapacity(capacity, dropPolicy);
+	}
+	
 	void init(int strategy) {
 		// check if strategy is valid
 		if (! isValidStrategy(strategy)) {
@@ -55,105 +127,1543 @@ public class Queue implements ExtensionObject {
 			strategy = FIFO;
 		}
 		this.strategy = strategy;
-		this.q = new ArrayList<QElem>();
-		this.insertionIndex = 0;
+		this.head = 0;
+		this.count = 0;
+		this.rendered = null;
+		if (this.spill != null) {
+			this.spill.dispose();
+			this.spill = null;
+		}
+		if (strategy == EVENT) {
+			this.calendar = new CalendarQueue();
+		}
+		else {
+			this.elems = new Object[INITIAL_CAPACITY];
+			this.times = new double[INITIAL_CAPACITY];
+		}
+		if (strategy == PRIORITY) {
+			this.priorities = new double[INITIAL_CAPACITY];
+			this.seqNos = new long[INITIAL_CAPACITY];
+		}
+		else {
+			this.seqNos = null;
+		}
+		this.nextSeqNo = 0;
+		this.headSeqNo = 0;
+		this.handles = null;
+		this.cancelled = null;
+		this.numCancelled = 0;
+		this.index = null;
+		this.deadlines = null;
+		this.classIds = null;
+		this.classStats = null;
+		this.admission = null;
+		this.stats = new QueueStats(0.0);
+		this.station = null;
+		this.sojourn = null;
+		this.callbacks = null;
 		resetStats(0.0);
 	}
 	
 	public static boolean isValidStrategy(int strategy) {
 		if (strategy < FIFO) return false;
-		if (strategy > LIFO) return false;
+		if (strategy > EVENT) return false;
 		return true;
 	}
+	
+	public static boolean isValidDropPolicy(int dropPolicy) {
+		return dropPolicy >= REJECT && dropPolicy <= RED;
+	}
+	
+	/** Limits this (empty) queue to the given number of elements, preallocating the backing arrays for them (up to 
+	 * {@link #MAX_PREALLOCATED} elements), so a full queue does not have to grow. (Cancelled elements still take up 
+	 * room until they reach the head of the queue, so the arrays can grow after all.)
+	 */
+	void setCapacity(int capacity, int dropPolicy) {
+		this.admission = new AdmissionControl(capacity, dropPolicy);
+		int length = INITIAL_CAPACITY;
+		while (length < capacity && length < MAX_PREALLOCATED) {
+			length <<= 1;
+		}
+		if (this.strategy == EVENT) {
+			this.calendar = new CalendarQueue(length);
+		}
+		else {
+			this.elems = new Object[length];
+			this.times = new double[length];
+			if (this.strategy == PRIORITY) {
+				this.priorities = new double[length];
+				this.seqNos = new long[length];
+			}
+		}
+	}
+	
+	/** Sets the parameters of random early detection: arrivals are dropped with a probability rising from 0 to 
+	 * maxDropProbability while the average length lies between the two thresholds, and always once it has reached 
+	 * maxThreshold. The average is updated at each arrival, giving the current length the given weight.
+	 */
+	public void setRed(double minThreshold, double maxThreshold, double maxDropProbability, double averageWeight) 
+			throws ExtensionException {
+		if (this.admission == null) {
+			throw new ExtensionException("this queue does not use random early detection");
+		}
+		this.admission.setRed(minThreshold, maxThreshold, maxDropProbability, averageWeight);
+	}
+
+	/** Gives random early detection the given random number generator (NetLogo's, so the drops follow random-seed), 
+	 * unless it already has one. Called by the primitives that insert, since an imported queue has none.
+	 */
+	public void setRandom(MersenneTwisterFast rng) {
+		if (this.admission != null && this.admission.rng == null) {
+			this.admission.rng = rng;
+		}
+	}
 
 	public void resetStats(double currentTime) {
-		this.maxSize = 0;
-		this.numInserts = 0;
-		this.maxWaitTime = 0;
-		this.minWaitTime = Double.MAX_VALUE;
-		this.totalWaitTime = 0;
-		this.totalTimeWeightedLength = 0;
-		this.timeOfLastChange = currentTime; 
-		this.initTime = currentTime;
+		this.stats.reset(currentTime);
+		if (this.classStats != null) {
+			this.classStats.reset(currentTime);
+		}
+		if (this.station != null) {
+			this.station.resetStats(currentTime);
+		}
 	}
 	
+	/** Returns the number of elements in the queue (not counting cancelled elements that are still in the backing store).
+	 */
 	public int size() {
-		return this.q.size();
+		return this.count - this.numCancelled;
 	}
 	
-	public void enqueue(Object elem, double currentTime) throws ExtensionException {
-		// check if currentTime is valid, i.e. >= timeOfLastChange
-		if (currentTime < this.timeOfLastChange) {
-			throw new ExtensionException("attempt to enqueue an element in the past: current time " + currentTime +
-					                     " is smaller than this queue's time of last change " + this.timeOfLastChange);
+	/** Returns views of all elements in the order in which they would leave the queue.
+	 * The returned {@link QElem}s are created on demand and only intended for output and comparison.
+	 * For a priority queue or an event list, this requires sorting, i.e. O(n log n).
+	 */
+	QElem[] toArray() {
+		return toArray(false);
+	}
+	
+	/** Returns views of all elements in the order of removal, including the cancelled ones if withCancelled is true.
+	 */
+	QElem[] toArray(boolean withCancelled) {
+		if (this.strategy == EVENT) {
+			return this.calendar.toArray(withCancelled ? null : this.cancelled);
+		}
+		if (this.spill != null) {
+			QElem[] all;
+			try {
+				all = this.spill.toArray();
+			}
+			catch (ExtensionException e) {
+				// only if the spilled segments have been removed behind our back
+				throw new IllegalStateException(e.getMessage());
+			}
+			return (withCancelled || this.numCancelled == 0) ? all : withoutCancelled(all, null);
+		}
+		int[] order = new int[this.count];
+		if (this.strategy == PRIORITY) {
+			Integer[] sorted = new Integer[this.count];
+			for (int i = 0; i < this.count; i++) {
+				sorted[i] = i;
+			}
+			Arrays.sort(sorted, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return before(a, b) ? -1 : (before(b, a) ? 1 : 0);
+				}
+			});
+			for (int i = 0; i < this.count; i++) {
+				order[i] = sorted[i];
+			}
+		}
+		else {
+			for (int i = 0; i < this.count; i++) {
+				order[i] = (this.head + i) & (this.elems.length - 1);
+			}
+		}
+		QElem[] result = new QElem[this.count];
+		for (int i = 0; i < this.count; i++) {
+			result[i] = new QElem(this.elems[order[i]], this.times[order[i]]);
+		}
+		return (withCancelled || this.numCancelled == 0) ? result : withoutCancelled(result, order);
+	}
+	
+	/** Returns the given elements (in the order of removal, taken from the given indices of the backing arrays) 
+	 * without the cancelled ones.
+	 */
+	private QElem[] withoutCancelled(QElem[] elements, int[] order) {
+		QElem[] result = new QElem[elements.length - this.numCancelled];
+		int n = 0;
+		for (int i = 0; i < elements.length; i++) {
+			long seqNo = (this.strategy == FIFO) ? this.headSeqNo + i : this.seqNos[order[i]];
+			if (! this.cancelled.contains(seqNo)) {
+				result[n++] = elements[i];
+			}
+		}
+		return result;
+	}
+	
+	/** Makes this (FIFO) queue spill to disk: at most two segments of the given length are kept in memory, all elements 
+	 * in between are written to temporary files. Only numbers, strings, booleans, nobody and turtles can be stored in 
+	 * such a queue. The statistics are not affected. A queue that tracks sojourn times cannot spill, since the sojourn 
+	 * tracker identifies elements by identity, and numbers and strings read back from disk are new objects.
+	 */
+	public void setSpill(int segmentLength) throws ExtensionException {
+		if (this.strategy != FIFO) {
+			throw new ExtensionException("only FIFO queues can spill to disk");
+		}
+		if (this.admission != null) {
+			throw new ExtensionException("a queue with limited capacity cannot spill to disk");
+		}
+		if (this.classIds != null) {
+			throw new ExtensionException("a queue with class tags cannot spill to disk");
+		}
+		if (this.sojourn != null) {
+			throw new ExtensionException("a queue that tracks sojourn times cannot spill to disk");
+		}
+		QElem[] elements = toArray(true);
+		for (QElem e : elements) {
+			SpillStore.check(e.getElem());
+		}
+		SpillStore store = new SpillStore(segmentLength);
+		for (QElem e : elements) {
+			store.add(e.getElem(), e.getTime());
+		}
+		if (this.spill != null) {
+			this.spill.dispose();
+		}
+		this.spill = store;
+		// the ring buffer is no longer needed
+		this.elems = null;
+		this.times = null;
+		this.head = 0;
+	}
+	
+	/** Returns the number of elements currently written to disk (0 if this queue does not spill to disk).
+	 */
+	public long getSpilledCount() {
+		return (this.spill == null) ? 0 : this.spill.getSpilledCount();
+	}
+	
+	/** Grows the backing arrays to the smallest power of two that can hold the given number of elements,
+	 * unwrapping the elements so that the head is at index 0.
+	 */
+	void ensureCapacity(int minCapacity) {
+		int oldCapacity = this.elems.length;
+		if (minCapacity <= oldCapacity) {
+			return;
+		}
+		int newCapacity = oldCapacity;
+		while (newCapacity < minCapacity) {
+			newCapacity <<= 1;
+		}
+		int firstPart = Math.min(this.count, oldCapacity - this.head);
+		Object[] newElems = new Object[newCapacity];
+		System.arraycopy(this.elems, this.head, newElems, 0, firstPart);
+		System.arraycopy(this.elems, 0, newElems, firstPart, this.count - firstPart);
+		double[] newTimes = new double[newCapacity];
+		System.arraycopy(this.times, this.head, newTimes, 0, firstPart);
+		System.arraycopy(this.times, 0, newTimes, firstPart, this.count - firstPart);
+		this.elems = newElems;
+		this.times = newTimes;
+		if (this.strategy == PRIORITY) {
+			// a heap always starts at index 0, so there is nothing to unwrap
+			this.priorities = Arrays.copyOf(this.priorities, newCapacity);
+			this.seqNos = Arrays.copyOf(this.seqNos, newCapacity);
+			if (this.classIds != null) {
+				this.classIds = Arrays.copyOf(this.classIds, newCapacity);
+			}
+		}
+		else {
+			if (this.seqNos != null) {
+				long[] newSeqNos = new long[newCapacity];
+				System.arraycopy(this.seqNos, this.head, newSeqNos, 0, firstPart);
+				System.arraycopy(this.seqNos, 0, newSeqNos, firstPart, this.count - firstPart);
+				this.seqNos = newSeqNos;
+			}
+			if (this.classIds != null) {
+				int[] newClassIds = new int[newCapacity];
+				System.arraycopy(this.classIds, this.head, newClassIds, 0, firstPart);
+				System.arraycopy(this.classIds, 0, newClassIds, firstPart, this.count - firstPart);
+				this.classIds = newClassIds;
+			}
+		}
+		this.head = 0;
+	}
+	
+	/** Returns true if the heap element at index a has to leave the queue before the one at index b,
+	 * i.e. if it has a smaller priority value or the same priority and was inserted earlier.
+	 */
+	private boolean before(int a, int b) {
+		if (this.priorities[a] < this.priorities[b]) return true;
+		if (this.priorities[a] > this.priorities[b]) return false;
+		return this.seqNos[a] < this.seqNos[b];
+	}
+	
+	/** Moves the given element up from the hole at index i to its place in the heap.
+	 */
+	private void siftUp(int i, Object elem, double time, double priority, long seqNo, int classId) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (this.priorities[parent] < priority || 
+				(this.priorities[parent] <= priority && this.seqNos[parent] < seqNo)) {
+				break;
+			}
+			moveHeapElement(parent, i);
+			i = parent;
+		}
+		setHeapElement(i, elem, time, priority, seqNo, classId);
+	}
+	
+	/** Moves the given element down from the hole at index i to its place in the heap.
+	 */
+	private void siftDown(int i, Object elem, double time, double priority, long seqNo, int classId) {
+		int half = this.count >>> 1;
+		while (i < half) {
+			int child = (i << 1) + 1;
+			if (child + 1 < this.count && before(child + 1, child)) {
+				child++;
+			}
+			if (priority < this.priorities[child] || 
+				(priority <= this.priorities[child] && seqNo < this.seqNos[child])) {
+				break;
+			}
+			moveHeapElement(child, i);
+			i = child;
+		}
+		setHeapElement(i, elem, time, priority, seqNo, classId);
+	}
+	
+	private void moveHeapElement(int from, int to) {
+		this.elems[to] = this.elems[from];
+		this.times[to] = this.times[from];
+		this.priorities[to] = this.priorities[from];
+		this.seqNos[to] = this.seqNos[from];
+		if (this.classIds != null) {
+			this.classIds[to] = this.classIds[from];
+		}
+	}
+	
+	private void setHeapElement(int i, Object elem, double time, double priority, long seqNo, int classId) {
+		this.elems[i] = elem;
+		this.times[i] = time;
+		this.priorities[i] = priority;
+		this.seqNos[i] = seqNo;
+		if (this.classIds != null) {
+			this.classIds[i] = classId;
+		}
+	}
+	
+	/** Removes the element at index i from the heap, filling the hole with the last element of the heap.
+	 */
+	private void removeHeapElement(int i) {
+		int last = --this.count;
+		Object lastElem = this.elems[last];
+		double lastTime = this.times[last];
+		double lastPriority = this.priorities[last];
+		long lastSeqNo = this.seqNos[last];
+		int lastClassId = classIdAt(last);
+		this.elems[last] = null;
+		if (i < last) {
+			siftDown(i, lastElem, lastTime, lastPriority, lastSeqNo, lastClassId);
+			if (this.seqNos[i] == lastSeqNo) {
+				// it did not move down, so it may have to move up instead
+				siftUp(i, lastElem, lastTime, lastPriority, lastSeqNo, lastClassId);
+			}
+		}
+	}
+	
+	/** Inserts the given element at the specified time. In a priority queue, the element is inserted with priority 0;
+	 * in an event list, it is due immediately. Returns false if the queue has limited capacity and does not admit the element.
+	 */
+	public boolean enqueue(Object elem, double currentTime) throws ExtensionException {
+		return enqueue(elem, (strategy == EVENT) ? currentTime : 0.0, currentTime);
+	}
+	
+	/** Inserts the given element into an event list at the specified time, to become due at the given due time. 
+	 * Returns false if the event list has limited capacity and does not admit the element.
+	 */
+	public boolean schedule(Object elem, double dueTime, double currentTime) throws ExtensionException {
+		return enqueue(elem, dueTime, currentTime);
+	}
+	
+	/** Inserts the given element with the given priority at the specified time. The priority is only relevant 
+	 * for queues with PRIORITY strategy: elements with smaller priority values leave the queue first, elements
+	 * with equal priority leave the queue in the order of insertion. For queues with EVENT strategy, the priority
+	 * is the element's due time. Returns false if the queue has limited capacity and does not admit the element.
+	 */
+	public boolean enqueue(Object elem, double priority, double currentTime) throws ExtensionException {
+		return enqueue(elem, priority, currentTime, 0);
+	}
+	
+	/** Inserts the given element like {@link #enqueue(Object, double, double)}, tagged with the given class (a 
+	 * non-negative number), for which separate statistics are kept (see {@link #getClassStats(int)}). 
+	 */
+	public boolean enqueue(Object elem, double priority, double currentTime, int classId) throws ExtensionException {
+		if (classId != 0 && this.classIds == null) {
+			useClasses();
+		}
+		if (add(elem, priority, currentTime, classId) < 0) {
+			return false;
+		}
+		if (this.sojourn != null) {
+			this.sojourn.enter(elem, currentTime);
+		}
+		return true;
+	}
+	
+	/** Inserts the given element like {@link #enqueue(Object, double, double)} and returns a handle, by which the 
+	 * element can be cancelled while it is waiting (or -1 if the element is not admitted).
+	 */
+	public long enqueueWithHandle(Object elem, double priority, double currentTime) throws ExtensionException {
+		if (this.handles == null) {
+			this.handles = new HashMap<Long, QElem>();
+			this.cancelled = new HashSet<Long>();
+			numberElements();
+		}
+		long handle = add(elem, priority, currentTime, 0);
+		if (handle < 0) {
+			return handle;
 		}
-		QElem qElem = new QElem(elem, currentTime);
-		this.q.add(insertionIndex, qElem);
-		if (strategy == FIFO) {
-			this.insertionIndex++;
+		this.handles.put(handle, new QElem(elem, currentTime));
+		if (this.sojourn != null) {
+			this.sojourn.enter(elem, currentTime);
+		}
+		return handle;
+	}
+	
+	/** Inserts the given element at the specified time, with a limited patience: unless it has left the queue 
+	 * before, it expires (reneges) after the given time, i.e. {@link #expire(double, List)} removes it then.
+	 * Returns false if the queue has limited capacity and does not admit the element.
+	 */
+	public boolean enqueueWithPatience(Object elem, double patience, double currentTime) throws ExtensionException {
+		long handle = enqueueWithHandle(elem, (strategy == EVENT) ? currentTime : 0.0, currentTime);
+		if (handle < 0) {
+			return false;
+		}
+		if (this.deadlines == null) {
+			this.deadlines = new DeadlineHeap();
+		}
+		else if (this.deadlines.size > 2 * this.handles.size() + INITIAL_CAPACITY) {
+			// most entries belong to elements that have left the queue in time
+			this.deadlines.retain(this.handles);
+		}
+		this.deadlines.add(currentTime + patience, handle);
+		return true;
+	}
+	
+	/** Removes all elements whose patience has run out by the specified time and adds them to the given list, 
+	 * in the order of their deadlines. Each element is taken to leave the queue at its deadline (or at the time 
+	 * of last change, if that is later). Takes O(k log n) for k elements with deadlines up to the specified time.
+	 */
+	public void expire(double currentTime, List<Object> expired) throws ExtensionException {
+		DeadlineHeap d = this.deadlines;
+		while (d != null && d.size > 0 && d.firstDeadline() <= currentTime) {
+			double deadline = d.firstDeadline();
+			long handle = d.removeFirst();
+			QElem e = this.handles.get(handle);
+			if (e != null) {
+				// still waiting
+				renege(handle, e, Math.max(deadline, this.stats.timeOfLastChange));
+				this.stats.numExpired++;
+				expired.add(e.getElem());
+			}
+		}
+	}
+	
+	/** Makes a LIFO queue keep the insertion numbers of its elements, numbering the elements already in the queue 
+	 * from the tail. (FIFO queues number their elements implicitly, the other queues always keep the numbers.)
+	 */
+	private void numberElements() {
+		if (this.strategy == LIFO && this.seqNos == null) {
+			this.seqNos = new long[this.elems.length];
+			for (int i = this.count - 1; i >= 0; i--) {
+				this.seqNos[(this.head + i) & (this.elems.length - 1)] = this.nextSeqNo++;
+			}
+		}
+	}
+	
+	/** Inserts the given element (of the given class) with the given priority at the specified time, without noting its
+	 * entry into a network. Returns its insertion number, or -1 if the queue has limited capacity and does not admit 
+	 * the element.
+	 */
+	private long add(Object elem, double priority, double currentTime, int classId) throws ExtensionException {
+		checkTime(currentTime);
+		if (this.spill != null) {
+			SpillStore.check(elem);
+		}
+		if (! admits(elem, priority, currentTime)) {
+			return -1;
 		}
 		// update statistics
-		this.numInserts++;
-		if (size() > this.maxSize) {
-			this.maxSize++;
+		this.stats.arrive(currentTime);
+		// actually insert element into queue
+		return insert(elem, priority, currentTime, classId);
+	}
+	
+	/** Inserts all given elements at the specified time, in the given order, and returns the number of elements 
+	 * admitted. Apart from the order of the elements, this has the same effect as inserting them one by one, but 
+	 * FIFO and LIFO queues copy the elements in bulk and the statistics are updated only once (unless the capacity 
+	 * is limited: then each element is admitted on its own).
+	 */
+	public int enqueueAll(Object[] newElems, double currentTime) throws ExtensionException {
+		checkTime(currentTime);
+		int n = newElems.length;
+		if (n == 0) {
+			return 0;
 		}
-		this.totalTimeWeightedLength += (currentTime - this.timeOfLastChange) * (size() - 1);
-		this.timeOfLastChange = currentTime;
+		if (this.admission != null) {
+			int numAdmitted = 0;
+			double priority = (strategy == EVENT) ? currentTime : 0.0;
+			for (int i = 0; i < n; i++) {
+				if (enqueue(newElems[i], priority, currentTime)) {
+					numAdmitted++;
+				}
+			}
+			return numAdmitted;
+		}
+		if (this.spill != null) {
+			for (int i = 0; i < n; i++) {
+				SpillStore.check(newElems[i]);
+			}
+		}
+		// update statistics
+		this.stats.arrive(n, currentTime);
+		// actually insert elements into queue
+		if ((strategy == FIFO || strategy == LIFO) && this.spill == null && this.index == null && this.classIds == null) {
+			ensureCapacity(this.count + n);
+			int mask = this.elems.length - 1;
+			if (strategy == FIFO) {
+				// copy to the tail, in at most two parts if the array wraps around
+				int tail = (this.head + this.count) & mask;
+				int firstPart = Math.min(n, this.elems.length - tail);
+				System.arraycopy(newElems, 0, this.elems, tail, firstPart);
+				System.arraycopy(newElems, firstPart, this.elems, 0, n - firstPart);
+				Arrays.fill(this.times, tail, tail + firstPart, currentTime);
+				Arrays.fill(this.times, 0, n - firstPart, currentTime);
+			}
+			else {
+				// LIFO: the last of the new elements ends up at the head
+				for (int i = 0; i < n; i++) {
+					this.head = (this.head - 1) & mask;
+					this.elems[this.head] = newElems[i];
+					this.times[this.head] = currentTime;
+					if (this.seqNos != null) {
+						this.seqNos[this.head] = this.nextSeqNo++;
+					}
+				}
+			}
+			this.count += n;
+			this.rendered = null;
+			lengthChanged();
+			if (this.trace != null) {
+				for (int i = 0; i < n; i++) {
+					this.trace.append(TraceFile.ARRIVAL, currentTime, newElems[i], size() - n + i + 1, 0.0);
+				}
+			}
+		}
+		else {
+			double priority = (strategy == EVENT) ? currentTime : 0.0;
+			for (int i = 0; i < n; i++) {
+				insert(newElems[i], priority, currentTime, 0);
+			}
+		}
+		if (this.sojourn != null) {
+			for (int i = 0; i < n; i++) {
+				this.sojourn.enter(newElems[i], currentTime);
+			}
+		}
+		return n;
 	}
 	
-	public Object dequeue(double currentTime) {
-		if (size() == 0) {
+	public Object dequeue(double currentTime) throws ExtensionException {
+		Object elem = take(currentTime);
+		if (elem != null && this.sojourn != null) {
+			this.sojourn.leave(elem, currentTime);
+		}
+		return elem;
+	}
+	
+	/** Removes the first element at the specified time (or returns null if the queue is empty), without noting 
+	 * that it leaves the network.
+	 */
+	private Object take(double currentTime) throws ExtensionException {
+		if (this.count == 0) {
 			// queue is empty
 			return null;
 		}
-		QElem qElem = this.q.get(0);
+		double insertionTime = firstTime();
 		// update statistics
-		double waitTime = currentTime - qElem.getTime();
-		this.totalWaitTime += waitTime;
-		if (waitTime > this.maxWaitTime) {
-			this.maxWaitTime = waitTime;
-		}
-		if (waitTime < this.minWaitTime) {
-			this.minWaitTime = waitTime;
+		this.stats.depart(insertionTime, currentTime);
+		if (this.classStats != null) {
+			this.classStats.depart(firstClassId(), insertionTime, currentTime);
 		}
-		this.totalTimeWeightedLength += (currentTime - this.timeOfLastChange) * size();
-		this.timeOfLastChange = currentTime;
 		// actually remove element from queue
-		this.q.remove(0);
-		if (strategy == FIFO) this.insertionIndex--;
-		return qElem.getElem();
+		Object elem = removeNext();
+		if (this.callbacks != null) {
+			this.callbacks.departed(elem, currentTime - insertionTime);
+		}
+		if (this.trace != null) {
+			this.trace.append(TraceFile.DEPARTURE, currentTime, elem, size(), currentTime - insertionTime);
+		}
+		return elem;
 	}
 	
-	public double getMeanWaitTime() {
-		if (this.numInserts == 0) return 0.0;
-		return (this.totalWaitTime + accumulateCurrentlyWaiting()) / this.numInserts;
+	/** Removes (at most) the first n elements from the queue and returns them in the order of removal.
+	 * This has the same effect as removing them one by one, but FIFO and LIFO queues copy the elements in bulk.
+	 */
+	public Object[] dequeue(int n, double currentTime) throws ExtensionException {
+		n = Math.max(0, Math.min(n, size()));
+		Object[] result = new Object[n];
+		if (n == 0) {
+			return result;
+		}
+		// actually remove elements from queue
+		if ((strategy == FIFO || strategy == LIFO) && this.spill == null && this.handles == null && this.index == null 
+				&& this.classIds == null) {
+			int mask = this.elems.length - 1;
+			for (int i = 0; i < n; i++) {
+				double insertionTime = this.times[(this.head + i) & mask];
+				this.stats.depart(insertionTime, currentTime);
+				if (this.callbacks != null) {
+					this.callbacks.departed(this.elems[(this.head + i) & mask], currentTime - insertionTime);
+				}
+				if (this.trace != null) {
+					this.trace.append(TraceFile.DEPARTURE, currentTime, this.elems[(this.head + i) & mask], 
+							this.count - i - 1, currentTime - insertionTime);
+				}
+			}
+			// copy from the head, in at most two parts if the array wraps around
+			int firstPart = Math.min(n, this.elems.length - this.head);
+			System.arraycopy(this.elems, this.head, result, 0, firstPart);
+			System.arraycopy(this.elems, 0, result, firstPart, n - firstPart);
+			Arrays.fill(this.elems, this.head, this.head + firstPart, null);
+			Arrays.fill(this.elems, 0, n - firstPart, null);
+			this.head = (this.head + n) & mask;
+			this.count -= n;
+			this.headSeqNo += n;
+			this.rendered = null;
+			lengthChanged();
+		}
+		else {
+			for (int i = 0; i < n; i++) {
+				double insertionTime = firstTime();
+				this.stats.depart(insertionTime, currentTime);
+				if (this.classStats != null) {
+					this.classStats.depart(firstClassId(), insertionTime, currentTime);
+				}
+				result[i] = removeNext();
+				if (this.callbacks != null) {
+					this.callbacks.departed(result[i], currentTime - insertionTime);
+				}
+				if (this.trace != null) {
+					this.trace.append(TraceFile.DEPARTURE, currentTime, result[i], size(), currentTime - insertionTime);
+				}
+			}
+		}
+		if (this.sojourn != null) {
+			for (int i = 0; i < n; i++) {
+				this.sojourn.leave(result[i], currentTime);
+			}
+		}
+		return result;
+	}
+	
+	/** Moves the first element of this queue to the given queue at the specified time and returns it (or returns null 
+	 * if this queue is empty). The statistics of both queues are updated as if the element had been removed and 
+	 * inserted; if both queues are part of the same network, the element keeps its time of entry into the network.
+	 * Nothing is moved if the given queue cannot take the element. If the given queue has limited capacity and does 
+	 * not admit the element, it stays in this queue and null is returned (the given queue counts a blocked arrival). 
+	 * The element keeps its class.
+	 */
+	public Object transferTo(Queue target, double currentTime) throws ExtensionException {
+		if (this.count == 0) {
+			return null;
+		}
+		target.checkTime(currentTime);
+		Object elem = firstElem();
+		if (target.spill != null) {
+			SpillStore.check(elem);
+		}
+		int classId = firstClassId();
+		if (classId != 0 && target.classIds == null) {
+			target.useClasses();
+		}
+		double priority = (target.strategy == EVENT) ? currentTime : 0.0;
+		// an element moved within the same queue does not take up more room
+		if (target != this && ! target.admits(elem, priority, currentTime)) {
+			return null;
+		}
+		take(currentTime);
+		target.stats.arrive(currentTime);
+		target.insert(elem, priority, currentTime, classId);
+		if (this.sojourn != target.sojourn) {
+			if (this.sojourn != null) {
+				this.sojourn.leave(elem, currentTime);
+			}
+			if (target.sojourn != null) {
+				target.sojourn.enter(elem, currentTime);
+			}
+		}
+		return elem;
+	}
+	
+	/** Cancels the element with the given handle at the specified time, i.e. lets it renege: it leaves the queue 
+	 * without being served, so its time in the queue is recorded in the reneging statistics instead of the wait 
+	 * time statistics. Returns false if the element is no longer in the queue. The element is only marked as 
+	 * cancelled in O(1); it is dropped from the backing store when it reaches the head of the queue.
+	 */
+	public boolean cancel(long handle, double currentTime) throws ExtensionException {
+		QElem e = (this.handles == null) ? null : this.handles.get(handle);
+		if (e == null) {
+			return false;
+		}
+		if (currentTime < this.stats.timeOfLastChange) {
+			throw new ExtensionException("attempt to cancel an element in the past: current time " + currentTime +
+					                     " is smaller than this queue's time of last change " + this.stats.timeOfLastChange);
+		}
+		renege(handle, e, currentTime);
+		return true;
 	}
 	
-	private double accumulateCurrentlyWaiting() {
-		// iterate through queue and add up wait-time-so-far for each element
-		double total = 0;
-		for (Iterator<QElem> i = q.iterator(); i.hasNext(); ) {
-			total += (this.timeOfLastChange - i.next().getTime());
+	/** Removes the given element (with the given handle) from the queue at the specified time without serving it.
+	 */
+	private void renege(long handle, QElem e, double currentTime) throws ExtensionException {
+		// update statistics
+		this.stats.renege(e.getTime(), currentTime);
+		if (this.classStats != null) {
+			this.classStats.leave(classOf(handle), e.getTime(), currentTime);
+		}
+		// mark the element as cancelled
+		this.handles.remove(handle);
+		if (this.index != null) {
+			this.index.remove(e.getElem(), handle);
+		}
+		this.cancelled.add(handle);
+		this.numCancelled++;
+		this.rendered = null;
+		removeCancelled();
+		lengthChanged();
+		if (this.trace != null) {
+			this.trace.append(TraceFile.RENEGE, currentTime, e.getElem(), size(), currentTime - e.getTime());
+		}
+		if (this.sojourn != null) {
+			this.sojourn.leave(e.getElem(), currentTime);
+		}
+	}
+	
+	/** Removes the first element from the backing store (as well as from the handles and the index) and returns it.
+	 * Any cancelled elements that are first then are dropped, too. Must not be called on an empty queue.
+	 */
+	private Object removeNext() throws ExtensionException {
+		Object elem;
+		if (this.handles == null && this.index == null) {
+			// nothing to update (and nothing cancelled)
+			elem = removeFirst();
+		}
+		else {
+			long seqNo = firstSeqNo();
+			elem = removeFirst();
+			if (this.handles != null) {
+				this.handles.remove(seqNo);
+			}
+			if (this.index != null) {
+				this.index.remove(elem, seqNo);
+			}
+			removeCancelled();
+		}
+		lengthChanged();
+		return elem;
+	}
+	
+	/** Tells the group and the callbacks of this queue (if any) that its length has changed.
+	 */
+	private void lengthChanged() {
+		if (this.group != null) {
+			this.group.update(this);
+		}
+		if (this.callbacks != null) {
+			this.callbacks.lengthChanged(this, size());
+		}
+	}
+	
+	/** Drops cancelled elements from the head of the queue, so the first element is never a cancelled one.
+	 */
+	private void removeCancelled() throws ExtensionException {
+		while (this.numCancelled > 0 && this.count > 0 && this.cancelled.remove(firstSeqNo())) {
+			removeFirst();
+			this.numCancelled--;
 		}
-		return total;
+	}
+	
+	/** Returns the reneging statistics: number of cancelled elements, mean and max time in the queue before cancelling,
+	 * and the number of cancelled elements that have expired.
+	 */
+	public double[] getRenegeStats() {
+		return this.stats.getRenegeStats();
+	}
+	
+	/** Decides whether the given element arriving with the given priority (or due time) at the specified time is 
+	 * admitted to this queue (always, unless the capacity is limited). An element that is not admitted is traced 
+	 * as dropped.
+	 */
+	private boolean admits(Object elem, double priority, double currentTime) throws ExtensionException {
+		if (this.admission == null || admit(priority, currentTime)) {
+			return true;
+		}
+		if (this.trace != null) {
+			this.trace.append(TraceFile.DROP, currentTime, elem, size(), 0.0);
+		}
+		return false;
+	}
+	
+	/** Decides whether an element arriving with the given priority (or due time) at the specified time is admitted 
+	 * to this queue of limited capacity, dropping another element to make room for it if the drop policy says so.
+	 * Returns false if the arriving element is dropped instead.
+	 */
+	private boolean admit(double priority, double currentTime) throws ExtensionException {
+		int dropPolicy = this.admission.dropPolicy;
+		boolean admitted;
+		if (dropPolicy == RED) {
+			admitted = ! this.admission.dropEarly(size());
+		}
+		else if (size() < this.admission.capacity) {
+			admitted = true;
+		}
+		else if (dropPolicy == DROP_HEAD) {
+			admitted = dropFirst(currentTime);
+		}
+		else if (dropPolicy == DROP_TAIL) {
+			admitted = dropLast(priority, currentTime);
+		}
+		else {
+			admitted = false;
+		}
+		if (! admitted) {
+			this.stats.block(currentTime);
+		}
+		return admitted;
+	}
+	
+	/** Drops the element that would leave the queue next, to make room for an arriving element. Returns false if 
+	 * the queue is empty.
+	 */
+	private boolean dropFirst(double currentTime) throws ExtensionException {
+		if (size() == 0) {
+			return false;
+		}
+		double insertionTime = firstTime();
+		int classId = firstClassId();
+		dropped(removeNext(), insertionTime, classId, currentTime);
+		return true;
+	}
+	
+	/** Drops the element that would leave the queue last, to make room for an arriving element with the given 
+	 * priority (or due time). Returns false if the arriving element would leave last itself, which is always the
+	 * case in a FIFO queue. This takes O(1) for LIFO queues (where the oldest element is dropped), but priority 
+	 * queues and event lists have to search for the last element, i.e. O(n).
+	 */
+	private boolean dropLast(double priority, double currentTime) throws ExtensionException {
+		if (size() == 0 || this.strategy == FIFO) {
+			return false;
+		}
+		Object elem;
+		double insertionTime;
+		long seqNo;
+		int classId;
+		if (this.strategy == EVENT) {
+			CalendarQueue c = this.calendar;
+			int slot = c.lastSlot((this.numCancelled > 0) ? this.cancelled : null);
+			if (priority >= c.dues[slot]) {
+				return false;
+			}
+			elem = c.elems[slot];
+			insertionTime = c.times[slot];
+			seqNo = c.seqNos[slot];
+			classId = (c.classIds == null) ? 0 : c.classIds[slot];
+			c.remove(slot);
+			this.count--;
+		}
+		else if (this.strategy == PRIORITY) {
+			int last = -1;
+			for (int i = 0; i < this.count; i++) {
+				if ((last == -1 || before(last, i)) && ! isCancelled(this.seqNos[i])) {
+					last = i;
+				}
+			}
+			if (priority >= this.priorities[last]) {
+				return false;
+			}
+			elem = this.elems[last];
+			insertionTime = this.times[last];
+			seqNo = this.seqNos[last];
+			classId = classIdAt(last);
+			removeHeapElement(last);
+		}
+		else {
+			// LIFO: the oldest element is at the tail (cancelled elements found there are dropped on the way)
+			int mask = this.elems.length - 1;
+			int tail = (this.head + this.count - 1) & mask;
+			while (this.seqNos != null && isCancelled(this.seqNos[tail])) {
+				this.cancelled.remove(this.seqNos[tail]);
+				this.numCancelled--;
+				this.elems[tail] = null;
+				this.count--;
+				tail = (tail - 1) & mask;
+			}
+			elem = this.elems[tail];
+			insertionTime = this.times[tail];
+			seqNo = (this.seqNos == null) ? -1 : this.seqNos[tail];
+			classId = classIdAt(tail);
+			this.elems[tail] = null;
+			this.count--;
+		}
+		if (this.handles != null) {
+			this.handles.remove(seqNo);
+		}
+		if (this.index != null) {
+			this.index.remove(elem, seqNo);
+		}
+		removeCancelled();
+		dropped(elem, insertionTime, classId, currentTime);
+		return true;
+	}
+	
+	/** Accounts for an element (of the given class, inserted at the given time) that has been dropped from the queue 
+	 * at the specified time.
+	 */
+	private void dropped(Object elem, double insertionTime, int classId, double currentTime) throws ExtensionException {
+		this.stats.drop(insertionTime, currentTime);
+		if (this.classStats != null) {
+			this.classStats.leave(classId, insertionTime, currentTime);
+		}
+		this.rendered = null;
+		if (this.sojourn != null) {
+			this.sojourn.leave(elem, currentTime);
+		}
+		lengthChanged();
+		if (this.trace != null) {
+			this.trace.append(TraceFile.DROP, currentTime, elem, size(), currentTime - insertionTime);
+		}
+	}
+	
+	/** Returns the loss statistics of a queue with limited capacity: the blocking probability (the fraction of 
+	 * arrivals that were not admitted), the number of arrivals that were not admitted, and the number of elements 
+	 * dropped from the queue to make room for an arrival.
+	 */
+	public double[] getLossStats() {
+		return this.stats.getLossStats();
+	}
+	
+	/** Starts keeping the class of each element and statistics per class. All elements so far are of class 0, 
+	 * so class 0 takes over the statistics of the whole queue.
+	 */
+	void useClasses() throws ExtensionException {
+		if (this.spill != null) {
+			throw new ExtensionException("a queue that spills to disk cannot keep class tags");
+		}
+		if (this.strategy == EVENT) {
+			// an event list keeps the classes in its calendar
+			this.calendar.classIds = new int[this.calendar.elems.length];
+			this.classIds = new int[0];
+		}
+		else {
+			this.classIds = new int[this.elems.length];
+		}
+		QueueStats q = this.stats;
+		ClassStats s = new ClassStats(q.initTime);
+		s.grow(1);
+		s.numArrivals[0] = q.numInserts;
+		s.numDepartures[0] = q.waitTimes.totalCount;
+		s.numLost[0] = q.numReneged + q.numDropped;
+		s.totalWaitTime[0] = q.totalWaitTime;
+		s.minWaitTime[0] = q.minWaitTime;
+		s.maxWaitTime[0] = q.maxWaitTime;
+		s.length[0] = q.length;
+		s.sumOfTimes[0] = q.sumOfTimes + q.sumOfTimesCompensation;
+		s.totalTimeWeightedLength[0] = q.totalTimeWeightedLength;
+		s.lastChange[0] = q.timeOfLastChange;
+		this.classStats = s;
+	}
+	
+	/** Returns the class of the element with the given insertion number, which must be in the backing store. This takes
+	 * O(1) for FIFO queues and O(log n) for LIFO queues; priority queues and event lists have to search for the element.
+	 */
+	private int classOf(long seqNo) {
+		if (this.classIds == null) {
+			return 0;
+		}
+		if (this.strategy == EVENT) {
+			return this.calendar.classOf(seqNo);
+		}
+		int mask = this.elems.length - 1;
+		if (this.strategy == FIFO) {
+			return this.classIds[(this.head + (int)(seqNo - this.headSeqNo)) & mask];
+		}
+		if (this.strategy == LIFO) {
+			// the insertion numbers decrease from the head
+			int low = 0;
+			int high = this.count - 1;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (this.seqNos[(this.head + mid) & mask] > seqNo) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			return this.classIds[(this.head + low) & mask];
+		}
+		for (int i = 0; i < this.count; i++) {
+			if (this.seqNos[i] == seqNo) {
+				return this.classIds[i];
+			}
+		}
+		return 0;
+	}
+	
+	/** Returns the statistics of the given class: number of arrivals and departures, mean, min and max wait time 
+	 * and mean length (all 0 for a class that has not been seen).
+	 */
+	public double[] getClassStats(int classId) {
+		if (this.classStats == null) {
+			if (classId != 0) {
+				return new double[6];
+			}
+			// all elements are of class 0
+			QueueStats q = this.stats;
+			return new double[]{q.numInserts, q.waitTimes.totalCount, q.getMeanWaitTime(), 
+					(q.waitTimes.totalCount == 0) ? 0.0 : q.minWaitTime, q.maxWaitTime, q.getMeanSize()};
+		}
+		return this.classStats.get(classId, this.stats.timeOfLastChange);
+	}
+	
+	/** Returns true if the given element is in the queue (in O(1), once the index has been built).
+	 */
+	public boolean contains(Object elem) throws ExtensionException {
+		return index().get(elem) != null;
+	}
+	
+	/** Returns the position of the given element in the queue (0 being the first element to leave the queue), 
+	 * or -1 if it is not in the queue. If the element is in the queue more than once, the position of the occurrence
+	 * that leaves first is returned. This takes O(1) for FIFO queues and O(log n) for LIFO queues (while no elements 
+	 * are cancelled); priority queues and event lists have to count the elements leaving before it, i.e. O(n).
+	 */
+	public int position(Object elem) throws ExtensionException {
+		MemberIndex.Occurrences o = index().get(elem);
+		if (o == null) {
+			return -1;
+		}
+		if (this.strategy == FIFO) {
+			// the elements are numbered consecutively from the head, including cancelled ones
+			long seqNo = o.first();
+			return (int)(seqNo - this.headSeqNo) - countCancelled(this.headSeqNo, seqNo);
+		}
+		if (this.strategy == LIFO) {
+			// the insertion numbers decrease from the head, so the newest occurrence can be found by binary search
+			long seqNo = o.last();
+			int mask = this.elems.length - 1;
+			int low = 0;
+			int high = this.count - 1;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (this.seqNos[(this.head + mid) & mask] > seqNo) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			return low - countCancelled(seqNo + 1, Long.MAX_VALUE);
+		}
+		if (this.strategy == EVENT) {
+			return this.calendar.position(o, this.cancelled);
+		}
+		// priority queue: find the occurrence that leaves first, then count the elements leaving before it
+		int first = -1;
+		for (int i = 0; i < this.count; i++) {
+			if (o.contains(this.seqNos[i]) && (first == -1 || before(i, first))) {
+				first = i;
+			}
+		}
+		int pos = 0;
+		for (int i = 0; i < this.count; i++) {
+			if (before(i, first) && ! isCancelled(this.seqNos[i])) {
+				pos++;
+			}
+		}
+		return pos;
+	}
+	
+	/** Returns the index, building it from the elements in the queue if this is the first query.
+	 */
+	private MemberIndex index() throws ExtensionException {
+		if (this.index == null) {
+			numberElements();
+			MemberIndex idx = new MemberIndex();
+			if (this.strategy == EVENT) {
+				CalendarQueue c = this.calendar;
+				for (int b = 0; b < c.buckets.length; b++) {
+					for (int slot = c.buckets[b]; slot != -1; slot = c.next[slot]) {
+						if (! isCancelled(c.seqNos[slot])) {
+							idx.add(c.elems[slot], c.seqNos[slot]);
+						}
+					}
+				}
+			}
+			else if (this.spill != null) {
+				QElem[] elements = this.spill.toArray();
+				for (int i = 0; i < elements.length; i++) {
+					if (! isCancelled(this.headSeqNo + i)) {
+						idx.add(elements[i].getElem(), this.headSeqNo + i);
+					}
+				}
+			}
+			else {
+				for (int i = 0; i < this.count; i++) {
+					int index = (this.strategy == PRIORITY) ? i : (this.head + i) & (this.elems.length - 1);
+					long seqNo = (this.strategy == FIFO) ? this.headSeqNo + i : this.seqNos[index];
+					if (! isCancelled(seqNo)) {
+						idx.add(this.elems[index], seqNo);
+					}
+				}
+			}
+			this.index = idx;
+		}
+		return this.index;
+	}
+	
+	private boolean isCancelled(long seqNo) {
+		return this.numCancelled > 0 && this.cancelled.contains(seqNo);
+	}
+	
+	/** Returns the number of cancelled elements (still in the backing store) with insertion numbers from 
+	 * (inclusive) to to (exclusive).
+	 */
+	private int countCancelled(long from, long to) {
+		int n = 0;
+		if (this.numCancelled > 0) {
+			for (Long seqNo : this.cancelled) {
+				if (seqNo >= from && seqNo < to) n++;
+			}
+		}
+		return n;
+	}
+	
+	private void checkTime(double currentTime) throws ExtensionException {
+		// check if currentTime is valid, i.e. >= timeOfLastChange
+		if (currentTime < this.stats.timeOfLastChange) {
+			throw new ExtensionException("attempt to enqueue an element in the past: current time " + currentTime +
+					                     " is smaller than this queue's time of last change " + this.stats.timeOfLastChange);
+		}
+	}
+	
+	/** Puts the given element (of the given class) into the backing store, according to the queue's strategy, and returns
+	 * its insertion number.
+	 */
+	private long insert(Object elem, double priority, double currentTime, int classId) throws ExtensionException {
+		this.rendered = null;
+		long seqNo;
+		if (this.spill != null) {
+			seqNo = this.headSeqNo + this.count;
+			this.spill.add(elem, currentTime);
+		}
+		else if (strategy == EVENT) {
+			seqNo = this.calendar.insert(elem, priority, currentTime, classId);
+		}
+		else if (strategy == PRIORITY) {
+			ensureCapacity(this.count + 1);
+			// add at the bottom of the heap and restore the heap property
+			seqNo = this.nextSeqNo++;
+			siftUp(this.count, elem, currentTime, priority, seqNo, classId);
+		}
+		else {
+			ensureCapacity(this.count + 1);
+			int index;
+			if (strategy == FIFO) {
+				// append at the tail
+				index = (this.head + this.count) & (this.elems.length - 1);
+				seqNo = this.headSeqNo + this.count;
+			}
+			else {
+				// LIFO: prepend at the head
+				this.head = (this.head - 1) & (this.elems.length - 1);
+				index = this.head;
+				seqNo = this.nextSeqNo++;
+				if (this.seqNos != null) {
+					this.seqNos[index] = seqNo;
+				}
+			}
+			this.elems[index] = elem;
+			this.times[index] = currentTime;
+			if (this.classIds != null) {
+				this.classIds[index] = classId;
+			}
+		}
+		this.count++;
+		if (this.index != null) {
+			this.index.add(elem, seqNo);
+		}
+		if (this.classStats != null) {
+			this.classStats.arrive(classId, currentTime);
+		}
+		lengthChanged();
+		if (this.trace != null) {
+			this.trace.append(TraceFile.ARRIVAL, currentTime, elem, size(), 0.0);
+		}
+		return seqNo;
+	}
+	
+	/** Returns the first element without removing it. Must not be called on an empty queue.
+	 */
+	private Object firstElem() throws ExtensionException {
+		if (this.spill != null) {
+			return this.spill.first();
+		}
+		return (strategy == EVENT) ? this.calendar.firstElem() : this.elems[this.head];
+	}
+	
+	/** Returns the insertion number of the first element. Must not be called on an empty queue.
+	 */
+	private long firstSeqNo() {
+		if (strategy == EVENT) {
+			return this.calendar.firstSeqNo();
+		}
+		// FIFO queues (including spilling ones) number their elements consecutively from the head
+		return (strategy == FIFO) ? this.headSeqNo : this.seqNos[this.head];
+	}
+	
+	/** Returns the class of the first element (0 if no class tags are used). Must not be called on an empty queue.
+	 */
+	private int firstClassId() {
+		if (this.classIds == null) {
+			return 0;
+		}
+		return (strategy == EVENT) ? this.calendar.firstClassId() : this.classIds[this.head];
+	}
+	
+	/** Returns the class of the element at the given index of the backing arrays (0 if no class tags are used).
+	 */
+	private int classIdAt(int index) {
+		return (this.classIds == null) ? 0 : this.classIds[index];
+	}
+	
+	/** Returns the insertion time of the first element. Must not be called on an empty queue.
+	 */
+	private double firstTime() throws ExtensionException {
+		if (this.spill != null) {
+			return this.spill.firstTime();
+		}
+		return (strategy == EVENT) ? this.calendar.firstTime() : this.times[this.head];
+	}
+	
+	/** Takes the first element out of the backing store and returns it. Must not be called on an empty queue.
+	 */
+	private Object removeFirst() throws ExtensionException {
+		this.rendered = null;
+		Object elem;
+		if (this.spill != null) {
+			elem = this.spill.removeFirst();
+			this.count--;
+		}
+		else if (strategy == EVENT) {
+			elem = this.calendar.removeFirst();
+			this.count--;
+		}
+		else if (strategy == PRIORITY) {
+			elem = this.elems[0];
+			// move the last element of the heap into the hole at the root
+			this.count--;
+			int last = this.count;
+			Object lastElem = this.elems[last];
+			this.elems[last] = null;
+			if (last > 0) {
+				siftDown(0, lastElem, this.times[last], this.priorities[last], this.seqNos[last], classIdAt(last));
+			}
+		}
+		else {
+			elem = this.elems[this.head];
+			this.elems[this.head] = null;
+			this.head = (this.head + 1) & (this.elems.length - 1);
+			this.count--;
+		}
+		this.headSeqNo++;
+		return elem;
+	}
+	
+	/** Removes the next element from an event list if it is due at or before the specified time; 
+	 * returns null otherwise (or if the queue is empty).
+	 */
+	public Object dequeueDue(double currentTime) throws ExtensionException {
+		if (this.count == 0 || this.calendar.firstDue() > currentTime) {
+			return null;
+		}
+		return dequeue(currentTime);
+	}
+	
+	public double getMeanWaitTime() {
+		return this.stats.getMeanWaitTime();
 	}
 
 	public double getMaxWaitTime() {
-		return this.maxWaitTime;
+		return this.stats.maxWaitTime;
 	}
 	
 	public double getMinWaitTime() {
-		return this.minWaitTime;
+		return this.stats.minWaitTime;
+	}
+	
+	/** Returns an estimate of the given percentile (between 0 and 100) of the wait times of all elements 
+	 * that have left the queue since the last reset.
+	 */
+	public double getWaitTimePercentile(double p) {
+		return this.stats.waitTimes.getPercentile(p);
+	}
+	
+	/** Returns the wait time histogram as pairs of bucket lower bound and count, in increasing order.
+	 */
+	public double[][] getWaitTimeHistogram() {
+		return this.stats.waitTimes.getBuckets();
+	}
+	
+	/** Sets up statistics over a trailing time window of the given width, divided into the given number of buckets.
+	 * Replaces any previous window; the cumulative statistics are not affected.
+	 */
+	public void setWindow(double width, int numBuckets) {
+		this.stats.window = new SlidingWindow(width, numBuckets, this.stats.timeOfLastChange);
+	}
+	
+	/** Returns the mean length of the queue over the trailing time window ending at the specified time.
+	 */
+	public double getWindowMeanSize(double currentTime) {
+		return this.stats.getWindowMeanSize(currentTime);
+	}
+	
+	/** Returns the mean wait time of the elements that have left the queue during the trailing time window ending 
+	 * at the specified time.
+	 */
+	public double getWindowMeanWaitTime(double currentTime) {
+		return this.stats.getWindowMeanWaitTime(currentTime);
+	}
+	
+	/** Returns the number of elements per time unit that have left the queue during the trailing time window 
+	 * ending at the specified time.
+	 */
+	public double getWindowThroughput(double currentTime) {
+		return this.stats.getWindowThroughput(currentTime);
+	}
+	
+	/** Makes this queue a service station with the given number of servers, or changes the number of servers and the 
+	 * service time of an existing station, at the queue's time of last change.
+	 */
+	public void setServers(int numServers, double serviceTime, AnonymousReporter reporter) throws ExtensionException {
+		setServers(numServers, serviceTime, reporter, this.stats.timeOfLastChange);
+	}
+	
+	/** Makes this queue a service station with the given number of servers, or changes the number of servers and the 
+	 * service time of an existing station at the specified time. The service time is either constant or computed for 
+	 * each element by the given reporter (if it is not null). Services in progress continue, so there must not be fewer 
+	 * servers than busy ones.
+	 */
+	public void setServers(int numServers, double serviceTime, AnonymousReporter reporter, double currentTime) 
+			throws ExtensionException {
+		if (this.strategy == EVENT) {
+			throw new ExtensionException("an event list cannot have servers");
+		}
+		if (this.station == null) {
+			this.station = new ServiceStation(numServers, this.stats.initTime);
+		}
+		else if (numServers < this.station.numBusy) {
+			throw new ExtensionException("cannot reduce the number of servers to " + numServers + " while " + 
+					                     this.station.numBusy + " servers are busy");
+		}
+		else {
+			this.station.setNumServers(numServers, currentTime);
+		}
+		this.station.setServiceTime(serviceTime, reporter);
+	}
+	
+	/** Completes all services that end at or before the specified time and starts serving waiting elements on free
+	 * servers, until no server is free or no element is waiting. A server freed by a completed service takes the next 
+	 * element when that service ends (or at the time of last change, if that is later), so the element's wait ends 
+	 * there; servers that were idle already start at the specified time. Adds the elements whose service was completed 
+	 * (in the order of completion) and those whose service was started to the given lists.
+	 * Service time reporters are run in the given context.
+	 */
+	public void serve(double currentTime, Context context, List<Object> completed, List<Object> started) 
+			throws ExtensionException 
+	{
+		ServiceStation s = this.station;
+		while (true) {
+			if (s.hasDueService(currentTime)) {
+				double end = s.ends[0];
+				Object elem = s.completeFirst();
+				if (this.sojourn != null) {
+					// the element only leaves the network when its service is completed
+					this.sojourn.leave(elem, end);
+				}
+				completed.add(elem);
+				if (this.count > 0 && s.hasFreeServer()) {
+					startService(Math.max(end, this.stats.timeOfLastChange), context, started);
+				}
+			}
+			else if (s.hasFreeServer() && this.count > 0) {
+				startService(currentTime, context, started);
+			}
+			else {
+				break;
+			}
+		}
+	}
+	
+	/** Starts serving the first element at the specified time and adds it to the given list.
+	 */
+	private void startService(double startTime, Context context, List<Object> started) throws ExtensionException {
+		Object elem = take(startTime);
+		this.station.start(elem, startTime, this.station.getServiceTime(elem, context));
+		started.add(elem);
+	}
+	
+	/** Registers the given command to be run whenever the length of the queue rises above the given threshold
+	 * (with the queue as input), replacing any command registered before. A null command 
+	 * removes the registered one.
+	 */
+	public void onLengthAbove(int threshold, AnonymousCommand command) {
+		callbacks().lengthAbove = command;
+		this.callbacks.lengthAboveThreshold = threshold;
+		dropCallbacksIfEmpty();
+	}
+	
+	/** Registers the given command to be run whenever the length of the queue falls below the given threshold
+	 * (with the queue as input), replacing any command registered before. A null command 
+	 * removes the registered one.
+	 */
+	public void onLengthBelow(int threshold, AnonymousCommand command) {
+		callbacks().lengthBelow = command;
+		this.callbacks.lengthBelowThreshold = threshold;
+		dropCallbacksIfEmpty();
+	}
+	
+	/** Registers the given command to be run whenever the queue runs empty (with the queue as input), replacing any 
+	 * command registered before. A null command removes the registered one.
+	 */
+	public void onEmpty(AnonymousCommand command) {
+		callbacks().empty = command;
+		dropCallbacksIfEmpty();
+	}
+	
+	/** Registers the given command to be run whenever an element leaves the queue after waiting longer than the given
+	 * time (with the element and its wait time as inputs), replacing any command registered before. Cancelled and 
+	 * dropped elements do not count. A null command removes the registered one.
+	 */
+	public void onWaitAbove(double threshold, AnonymousCommand command) {
+		callbacks().waitAbove = command;
+		this.callbacks.waitAboveThreshold = threshold;
+		dropCallbacksIfEmpty();
+	}
+	
+	private Callbacks callbacks() {
+		if (this.callbacks == null) {
+			this.callbacks = new Callbacks(size());
+		}
+		return this.callbacks;
+	}
+	
+	private void dropCallbacksIfEmpty() {
+		if (this.callbacks.isEmpty() && this.callbacks.pending.isEmpty()) {
+			this.callbacks = null;
+		}
+	}
+	
+	/** Runs the commands whose condition has come true since they were last run, in the given context. This is
+	 * called by every primitive that changes the queue, after the change.
+	 */
+	public void runCallbacks(Context context) throws ExtensionException {
+		if (this.callbacks != null) {
+			this.callbacks.run(context);
+		}
+	}
+	
+	/** Starts writing a binary trace of the arrivals and departures of this queue (including the elements that renege
+	 * or are dropped) to the given file, replacing the file and ending any trace started before (see {@link TraceFile}).
+	 */
+	public void startTrace(Path path) throws ExtensionException {
+		stopTrace();
+		QueueStats s = this.stats;
+		this.trace = new TraceFile(path, s.length, s.timeOfLastChange, s.sumOfTimes + s.sumOfTimesCompensation);
+	}
+	
+	/** Stops the trace of this queue (if any) and closes its file.
+	 */
+	public void stopTrace() throws ExtensionException {
+		if (this.trace != null) {
+			TraceFile t = this.trace;
+			this.trace = null;
+			t.close();
+		}
+	}
+	
+	/** Makes all given queues track the end-to-end sojourn time of elements in the network they form: an element enters
+	 * the network when it is inserted into one of the queues, and leaves it when it is removed from one of them (or 
+	 * when its service is completed), unless it is transferred to another queue of the network. Queues that spill to 
+	 * disk cannot be part of the network (see {@link #setSpill(int)}).
+	 */
+	public static void trackSojourn(Queue[] network) throws ExtensionException {
+		for (Queue q : network) {
+			if (q.spill != null) {
+				throw new ExtensionException("a queue that spills to disk cannot track sojourn times");
+			}
+		}
+		SojournTracker tracker = new SojournTracker();
+		for (Queue q : network) {
+			q.sojourn = tracker;
+		}
+	}
+	
+	/** Returns the statistics of the end-to-end sojourn time in the network of this queue: number of elements that 
+	 * have left the network, mean, max and min sojourn time.
+	 */
+	public double[] getSojournStats() {
+		SojournTracker t = this.sojourn;
+		return new double[]{t.count, t.getMean(), t.max, (t.count == 0) ? 0.0 : t.min};
+	}
+	
+	public int getNumBusyServers() {
+		return this.station.numBusy;
+	}
+	
+	public double getBusyTime(double currentTime) {
+		return this.station.getBusyTime(currentTime);
+	}
+	
+	public double getUtilisation(double currentTime) {
+		return this.station.getUtilisation(currentTime);
+	}
+	
+	public double getThroughput(double currentTime) {
+		return this.station.getThroughput(currentTime);
 	}
 	
 	public int getMaxSize() {
-		return this.maxSize;
+		return this.stats.maxSize;
 	}
 	
 	public double getMeanSize() {
-		double duration = this.timeOfLastChange - this.initTime;
-		if (duration >= 0 & duration <= 0) return 0.0;
-		return this.totalTimeWeightedLength / duration;
+		return this.stats.getMeanSize();
+	}
+	
+	/** Returns the time-weighted distribution of the queue length, i.e. for each length k from 0 up to the 
+	 * max length the fraction of time the queue has had length k. Returns an empty array if no time has passed.
+	 */
+	public double[] getLengthDistribution() {
+		return this.stats.getLengthDistribution();
+	}
+	
+	/** Returns the given percentile (between 0 and 100) of the time-weighted queue length, i.e. the smallest 
+	 * length k such that the queue has had length k or less for at least p percent of the time.
+	 */
+	public int getLengthPercentile(double p) {
+		return this.stats.getLengthPercentile(p);
 	}
 
 	/* (non-Javadoc)
@@ -161,10 +1671,15 @@ public class Queue implements ExtensionObject {
 	 */
 	@Override
 	public String dump(boolean readable, boolean exporting, boolean reference) {
-		// ignore the arguments, just return a String representation of the queue
+		if (exporting && reference) {
+			// the queue itself is exported by QueueExtension.exportWorld(), just refer to it by id
+			QueueExtension.register(this);
+			return Long.toString(this.id);
+		}
+		// otherwise ignore the arguments, just return a String representation of the queue
 		return toString();
 	}
-
+	
 	/* (non-Javadoc)
 	 * @see org.nlogo.core.ExtensionObject#getExtensionName()
 	 */
@@ -201,35 +1716,107 @@ public class Queue implements ExtensionObject {
 			// not the same length
 			return false;
 		}
-		if ((other.getMaxSize() != this.maxSize) || 
-		   (other.getMaxWaitTime() != this.maxWaitTime) ||
-		   (other.getMinWaitTime() != this.minWaitTime) ||
-		   (other.getMeanWaitTime() != this.getMeanWaitTime()) ||
-		   (other.getMeanSize() != this.getMeanSize())) 
+		if ((other.getMaxSize() != this.getMaxSize()) || 
+		   (other.getMaxWaitTime() != this.getMaxWaitTime()) ||
+		   (other.getMinWaitTime() != this.getMinWaitTime()) ||
+		   ! almostEqual(other.getMeanWaitTime(), this.getMeanWaitTime()) ||
+		   ! almostEqual(other.getMeanSize(), this.getMeanSize())) 
 		{
 			// not the same statistics
 			return false;
 		}
 		// compare elements
-		Iterator<QElem> iThis = this.q.iterator();
-		Iterator<QElem> iOther = other.q.iterator();
+		QElem[] elemsThis = this.toArray();
+		QElem[] elemsOther = other.toArray();
 		boolean theSame = true;
-		while (theSame && iThis.hasNext() && iOther.hasNext()) {
-			theSame = iThis.next().equals(iOther.next());
+		for (int i = 0; theSame && i < elemsThis.length; i++) {
+			theSame = elemsThis[i].equals(elemsOther[i]);
 		}
 		return theSame;
 	}
 	
+	/** Returns true if the given values differ by no more than rounding errors. Means are derived from running sums 
+	 * (e.g. of insertion times), which can round differently in queues with the same history, say one that has been 
+	 * exported and imported.
+	 */
+	private static boolean almostEqual(double a, double b) {
+		return a == b || Math.abs(a - b) <= 1e-9 * Math.max(Math.abs(a), Math.abs(b));
+	}
+	
 	public String toString() {
-		StringBuilder buf = new StringBuilder("[");
-		for (Iterator<QElem> i = q.iterator(); i.hasNext(); ) {
-			QElem el = i.next();
-			buf.append(el.toString());
+		return render(Integer.MAX_VALUE);
+	}
+	
+	/** Returns a String representation of (at most) the first maxElements elements of the queue, followed by the 
+	 * number of elements left out. The result is cached until the elements of the queue change, so repeatedly 
+	 * showing an unchanged queue is cheap (changes within the elements themselves, e.g. a turtle's breed, are 
+	 * not noticed, though).
+	 */
+	public String render(int maxElements) {
+		if (this.rendered != null && this.renderedLimit == maxElements) {
+			return this.rendered;
+		}
+		int size = size();
+		int n = Math.min(maxElements, size);
+		StringBuilder buf = new StringBuilder(2 + 16 * n);
+		buf.append('[');
+		appendElements(buf, 0, n);
+		if (n < size) {
+			buf.append(" ... (").append(size - n).append(" more)");
 		}
-		buf.append("]");
+		buf.append(']');
+		this.rendered = buf.toString();
+		this.renderedLimit = maxElements;
+		return this.rendered;
+	}
+	
+	/** Returns a String representation of (at most) n elements of the queue, starting at the given position 
+	 * (0 being the first element to leave the queue).
+	 */
+	public String render(int from, int n) {
+		int size = size();
+		from = Math.max(0, Math.min(from, size));
+		int to = from + Math.max(0, Math.min(n, size - from));
+		StringBuilder buf = new StringBuilder(2 + 16 * (to - from));
+		buf.append('[');
+		appendElements(buf, from, to);
+		buf.append(']');
 		return buf.toString();
 	}
 	
+	/** Appends the elements at the positions from (inclusive) to to (exclusive), in the order of removal.
+	 * FIFO and LIFO queues are rendered straight from the ring buffer (unless elements have been cancelled), and a 
+	 * queue that spills to disk only reads the segments holding these elements; other queues have to be sorted first.
+	 */
+	private void appendElements(StringBuilder buf, int from, int to) {
+		if ((this.strategy == FIFO || this.strategy == LIFO) && this.spill == null && this.numCancelled == 0) {
+			int mask = this.elems.length - 1;
+			for (int i = from; i < to; i++) {
+				int index = (this.head + i) & mask;
+				QElem.append(buf, this.elems[index], this.times[index]);
+			}
+		}
+		else if (this.spill != null && this.numCancelled == 0) {
+			QElem[] elements;
+			try {
+				elements = this.spill.toArray(from, to);
+			}
+			catch (ExtensionException e) {
+				// only if the spilled segments have been removed behind our back
+				throw new IllegalStateException(e.getMessage());
+			}
+			for (QElem e : elements) {
+				QElem.append(buf, e.getElem(), e.getTime());
+			}
+		}
+		else if (from < to) {
+			QElem[] elements = toArray();
+			for (int i = from; i < to; i++) {
+				QElem.append(buf, elements[i].getElem(), elements[i].getTime());
+			}
+		}
+	}
+	
 	public static void main(String[] args) throws ExtensionException {
 		// do some unit testing
 		Queue q = new Queue(Queue.LIFO);
@@ -3,12 +3,24 @@
  */
 package org.cfpm.queue;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
 import org.nlogo.api.Context;
 import org.nlogo.api.DefaultClassManager;
 import org.nlogo.api.ExtensionException;
+import org.nlogo.api.ExtensionManager;
+import org.nlogo.api.ImportErrorHandler;
 import org.nlogo.api.LogoException;
 import org.nlogo.api.PrimitiveManager;
 import org.nlogo.api.OutputDestinationJ;
+import org.nlogo.api.Primitive;
+import org.nlogo.core.ExtensionObject;
 
 /**
  * @author ruth
@@ -20,27 +32,303 @@ public class QueueExtension extends DefaultClassManager {
 	 * In any deployed version of the extension the flag is set to false.
 	 */ 
 	static private boolean outputToNetlogo = false;
+	
+	/** All queues known to NetLogo (i.e. that have to be exported with the world), with their ids. Queues that are 
+	 * no longer referenced anywhere are dropped automatically.
+	 */
+	static private Map<Queue, Long> queues = new WeakHashMap<Queue, Long>();
+	/** Queues read back while importing a world, by id. References to a queue can be read before its state. */
+	static private Map<Long, Queue> importedQueues = new HashMap<Long, Queue>();
+	static private long nextId = 0;
+	/** All queue groups known to NetLogo, with their ids, and the groups read back while importing a world. */
+	static private Map<QueueGroup, Long> groups = new WeakHashMap<QueueGroup, Long>();
+	static private Map<Long, QueueGroup> importedGroups = new HashMap<Long, QueueGroup>();
+	static private long nextGroupId = 0;
+	/** Sojourn trackers read back while importing a world, by id (trackers are exported with the queues they belong to). */
+	static private Map<Long, SojournTracker> importedTrackers = new HashMap<Long, SojournTracker>();
+	static private long nextTrackerId = 0;
+	
+	/** Profiler of the primitives of this extension in the workspace that has loaded it. */
+	private Profiler profiler = new Profiler();
+	
+	/** Registers the given queue, so that it can be exported with the world. Assigns a new id to the queue if it
+	 * has none yet.
+	 */
+	static synchronized void register(Queue queue) {
+		if (queue.id < 0) {
+			queue.id = nextId++;
+		}
+		queues.put(queue, queue.id);
+	}
+	
+	/** Registers the given group, so that it can be exported with the world, together with its members.
+	 */
+	static synchronized void register(QueueGroup group) {
+		if (group.id < 0) {
+			group.id = nextGroupId++;
+		}
+		groups.put(group, group.id);
+		for (Queue queue : group.members) {
+			if (queue != null) {
+				register(queue);
+			}
+		}
+	}
+
+	/** Assigns a new id to the given sojourn tracker if it has none yet, so that the queues of its network can refer to it.
+	 */
+	static synchronized void register(SojournTracker tracker) {
+		if (tracker.id < 0) {
+			tracker.id = nextTrackerId++;
+		}
+	}
 
 	/* (non-Javadoc)
 	 * @see org.nlogo.api.DefaultClassManager#load(org.nlogo.api.PrimitiveManager)
 	 */
 	@Override
 	public void load(PrimitiveManager pMan) throws ExtensionException {
-		pMan.addPrimitive("create", new QCreate());
-		pMan.addPrimitive("empty?", new QEmpty());
-		pMan.addPrimitive("length", new QLength());
-		pMan.addPrimitive("insert", new QInsert());
-		pMan.addPrimitive("remove", new QRemove());
-		pMan.addPrimitive("get-stats", new QGetStats());
-		pMan.addPrimitive("reset", new QReset());
-		pMan.addPrimitive("show", new QShow());
-		pMan.addPrimitive("max-length", new QMaxLength());
-		pMan.addPrimitive("mean-length", new QMeanLength());
-		pMan.addPrimitive("max-wt", new QMaxWaitTime());
-		pMan.addPrimitive("mean-wt", new QMeanWaitTime());
+		addPrimitive(pMan, "create", new QCreate());
+		addPrimitive(pMan, "empty?", new QEmpty());
+		addPrimitive(pMan, "length", new QLength());
+		addPrimitive(pMan, "member?", new QMember());
+		addPrimitive(pMan, "position", new QPosition());
+		addPrimitive(pMan, "insert", new QInsert());
+		addPrimitive(pMan, "offer", new QOffer());
+		addPrimitive(pMan, "insert-with-priority", new QInsertWithPriority());
+		addPrimitive(pMan, "schedule", new QSchedule());
+		addPrimitive(pMan, "insert-handle", new QInsertHandle());
+		addPrimitive(pMan, "cancel", new QCancel());
+		addPrimitive(pMan, "insert-with-patience", new QInsertWithPatience());
+		addPrimitive(pMan, "expire", new QExpire());
+		addPrimitive(pMan, "remove-due", new QRemoveDue());
+		addPrimitive(pMan, "remove", new QRemove());
+		addPrimitive(pMan, "insert-all", new QInsertAll());
+		addPrimitive(pMan, "remove-n", new QRemoveN());
+		addPrimitive(pMan, "remove-all", new QRemoveAll());
+		addPrimitive(pMan, "get-stats", new QGetStats());
+		addPrimitive(pMan, "reset", new QReset());
+		addPrimitive(pMan, "show", new QShow());
+		addPrimitive(pMan, "show-range", new QShowRange());
+		addPrimitive(pMan, "max-length", new QMaxLength());
+		addPrimitive(pMan, "mean-length", new QMeanLength());
+		addPrimitive(pMan, "length-distribution", new QLengthDistribution());
+		addPrimitive(pMan, "length-percentile", new QLengthPercentile());
+		addPrimitive(pMan, "max-wt", new QMaxWaitTime());
+		addPrimitive(pMan, "mean-wt", new QMeanWaitTime());
+		addPrimitive(pMan, "wt-percentile", new QWaitTimePercentile());
+		addPrimitive(pMan, "wt-histogram", new QWaitTimeHistogram());
+		addPrimitive(pMan, "set-window", new QSetWindow());
+		addPrimitive(pMan, "window-mean-length", new QWindowMeanLength());
+		addPrimitive(pMan, "window-mean-wt", new QWindowMeanWaitTime());
+		addPrimitive(pMan, "window-throughput", new QWindowThroughput());
+		addPrimitive(pMan, "set-spill", new QSetSpill());
+		addPrimitive(pMan, "set-red", new QSetRed());
+		addPrimitive(pMan, "set-servers", new QSetServers());
+		addPrimitive(pMan, "serve", new QServe());
+		addPrimitive(pMan, "busy-servers", new QBusyServers());
+		addPrimitive(pMan, "busy-time", new QBusyTime());
+		addPrimitive(pMan, "utilisation", new QUtilisation());
+		addPrimitive(pMan, "throughput", new QThroughput());
+		addPrimitive(pMan, "transfer", new QTransfer());
+		addPrimitive(pMan, "route", new QRoute());
+		addPrimitive(pMan, "track-sojourn", new QTrackSojourn());
+		addPrimitive(pMan, "sojourn-stats", new QSojournStats());
+		addPrimitive(pMan, "renege-stats", new QRenegeStats());
+		addPrimitive(pMan, "class-stats", new QClassStats());
+		addPrimitive(pMan, "create-group", new QCreateGroup());
+		addPrimitive(pMan, "group-shortest", new QGroupShortest());
+		addPrimitive(pMan, "group-choose-two", new QGroupChooseTwo());
+		addPrimitive(pMan, "group-stats", new QGroupStats());
+		addPrimitive(pMan, "on-length-above", new QOnLengthAbove());
+		addPrimitive(pMan, "on-length-below", new QOnLengthBelow());
+		addPrimitive(pMan, "on-empty", new QOnEmpty());
+		addPrimitive(pMan, "on-wait-above", new QOnWaitAbove());
+		addPrimitive(pMan, "trace-start", new QTraceStart());
+		addPrimitive(pMan, "trace-stop", new QTraceStop());
+		// not profiled themselves
+		pMan.addPrimitive("set-profiling", new QSetProfiling(this.profiler));
+		pMan.addPrimitive("profile", new QProfile(this.profiler));
 		
 	}
 
+	/** Registers the given primitive under the given name, wrapped so that it can be profiled.
+	 */
+	private void addPrimitive(PrimitiveManager pMan, String name, Primitive primitive) {
+		pMan.addPrimitive(name, this.profiler.wrap(name, primitive));
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.nlogo.api.DefaultClassManager#clearAll()
+	 */
+	@Override
+	public void clearAll() {
+		synchronized (QueueExtension.class) {
+			queues.clear();
+			importedQueues.clear();
+			nextId = 0;
+			groups.clear();
+			importedGroups.clear();
+			nextGroupId = 0;
+			importedTrackers.clear();
+			nextTrackerId = 0;
+		}
+		SpillStore.disposeAll();
+		try {
+			TraceFile.closeAll();
+		}
+		catch (ExtensionException e) {
+			// the traces are closed as far as possible, there is nobody to report the error to
+		}
+	}
+	
+	/** Closes the trace files that are still open.
+	 * @see org.nlogo.api.DefaultClassManager#unload(org.nlogo.api.ExtensionManager)
+	 */
+	@Override
+	public void unload(ExtensionManager em) throws ExtensionException {
+		SpillStore.disposeAll();
+		TraceFile.closeAll();
+	}
+	
+	/** Exports the state of all queues, written directly into the buffer to keep export linear in the number of elements.
+	 * @see org.nlogo.api.DefaultClassManager#exportWorld()
+	 */
+	@Override
+	public StringBuilder exportWorld() {
+		StringBuilder buf = new StringBuilder();
+		List<Queue> toExport;
+		List<QueueGroup> groupsToExport;
+		Set<SojournTracker> trackersToExport = new LinkedHashSet<SojournTracker>();
+		synchronized (QueueExtension.class) {
+			// the members of the groups have to be exported, too
+			groupsToExport = new ArrayList<QueueGroup>(groups.keySet());
+			for (QueueGroup group : groupsToExport) {
+				register(group);
+			}
+			toExport = new ArrayList<Queue>(queues.keySet());
+			for (Queue queue : toExport) {
+				if (queue.sojourn != null && trackersToExport.add(queue.sojourn)) {
+					register(queue.sojourn);
+				}
+			}
+		}
+		// trackers come first, so the elements they track are known when the elements of their queues are imported
+		for (SojournTracker tracker : trackersToExport) {
+			tracker.exportState(buf);
+		}
+		for (Queue queue : toExport) {
+			QueueState.exportState(queue, buf);
+		}
+		// groups come last, so their members are complete when they are imported
+		for (QueueGroup group : groupsToExport) {
+			group.exportState(buf);
+		}
+		return buf;
+	}
+	
+	/** Restores the state of all queues from the lines written by {@link #exportWorld()}.
+	 * @see org.nlogo.api.DefaultClassManager#importWorld(java.util.List, org.nlogo.api.ExtensionManager, org.nlogo.api.ImportErrorHandler)
+	 */
+	@Override
+	public void importWorld(List<String[]> lines, ExtensionManager reader, ImportErrorHandler handler) 
+			throws ExtensionException
+	{
+		int i = 0;
+		while (i < lines.size()) {
+			String[] line = lines.get(i);
+			if (line.length >= 2 && line[0].equals("group")) {
+				Queue[] members = new Queue[line.length - 2];
+				for (int k = 0; k < members.length; k++) {
+					members[k] = lookup(Long.parseLong(line[k + 2]));
+				}
+				lookupGroup(Long.parseLong(line[1])).setMembers(members);
+				i++;
+				continue;
+			}
+			if (line.length >= 6 && line[0].equals("sojourn")) {
+				lookupTracker(Long.parseLong(line[1])).importState(line, reader);
+				i++;
+				continue;
+			}
+			if (line.length < 4 || ! line[0].equals("queue")) {
+				handler.showError("Error importing queues", "unexpected line: " + String.join(",", line), "skipping line");
+				i++;
+				continue;
+			}
+			Queue queue = lookup(Long.parseLong(line[1]));
+			i = QueueState.importState(queue, lines, i, reader);
+		}
+		synchronized (QueueExtension.class) {
+			importedQueues.clear();
+			importedGroups.clear();
+			for (SojournTracker tracker : importedTrackers.values()) {
+				tracker.unclaimed = null;
+			}
+			importedTrackers.clear();
+		}
+	}
+	
+	/** Returns the queue (or group of queues) with the given id, which is referred to in an imported world.
+	 * @see org.nlogo.api.DefaultClassManager#readExtensionObject(org.nlogo.api.ExtensionManager, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public ExtensionObject readExtensionObject(ExtensionManager reader, String typeName, String value) 
+			throws ExtensionException
+	{
+		try {
+			if (typeName.equals("group")) {
+				return lookupGroup(Long.parseLong(value.trim()));
+			}
+			return lookup(Long.parseLong(value.trim()));
+		}
+		catch (NumberFormatException e) {
+			throw new ExtensionException("not a queue reference: " + value);
+		}
+	}
+	
+	/** Returns the imported queue with the given id; creates an empty queue with that id if it has not been read yet.
+	 */
+	static private synchronized Queue lookup(long id) {
+		Queue queue = importedQueues.get(id);
+		if (queue == null) {
+			queue = new Queue();
+			queue.id = id;
+			nextId = Math.max(nextId, id + 1);
+			queues.put(queue, id);
+			importedQueues.put(id, queue);
+		}
+		return queue;
+	}
+	
+	/** Returns the imported group with the given id; creates an empty group with that id if it has not been read yet.
+	 */
+	static private synchronized QueueGroup lookupGroup(long id) throws ExtensionException {
+		QueueGroup group = importedGroups.get(id);
+		if (group == null) {
+			group = new QueueGroup(new Queue[0]);
+			group.id = id;
+			nextGroupId = Math.max(nextGroupId, id + 1);
+			groups.put(group, id);
+			importedGroups.put(id, group);
+		}
+		return group;
+	}
+	
+	/** Returns the imported sojourn tracker with the given id; creates an empty tracker with that id if it has not been 
+	 * read yet.
+	 */
+	static synchronized SojournTracker lookupTracker(long id) {
+		SojournTracker tracker = importedTrackers.get(id);
+		if (tracker == null) {
+			tracker = new SojournTracker();
+			tracker.id = id;
+			nextTrackerId = Math.max(nextTrackerId, id + 1);
+			importedTrackers.put(id, tracker);
+		}
+		return tracker;
+	}
+	
 	/** Writes the given text to the NetLogo command center if the internal flag {@link #outputToNetlogo} is set to true.
 	 * This method is solely intended for debugging purposes while developing the extension. 
 	 * 
@@ -0,0 +1,259 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.MersenneTwisterFast;
+import org.nlogo.core.ExtensionObject;
+
+/** A group of queues (e.g. the checkouts of a supermarket) that keeps its members in a binary min-heap ordered by
+ * length, so the shortest queue is found in O(1) and every change in the length of a member costs O(log m) for a
+ * group of m queues. The members notify their group themselves whenever their length changes. The group also keeps
+ * the total length of its members. A queue belongs to at most one group; putting it into a new group takes it out
+ * of its old group.
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class QueueGroup implements ExtensionObject {
+
+	// the members in the order given at creation (null once a member has moved to another group)
+	Queue[] members;
+	// heap of member indices, ordered by length (ties broken by member index), and the heap position of each member
+	int[] heap;
+	int[] positions;
+	int heapSize;
+	// length of each member as last seen by the group
+	int[] lengths;
+	long totalLength;
+	// unique id, used to refer to the group when exporting (-1 if not exported yet)
+	long id;
+
+	/** Creates a group of the given queues (each queue may be given only once).
+	 */
+	public QueueGroup(Queue[] queues) throws ExtensionException {
+		this.id = -1;
+		setMembers(queues);
+	}
+
+	/** Makes the given queues the members of this group, taking them out of their old groups.
+	 */
+	void setMembers(Queue[] queues) throws ExtensionException {
+		Set<Queue> seen = Collections.newSetFromMap(new IdentityHashMap<Queue, Boolean>(2 * queues.length));
+		for (Queue q : queues) {
+			if (! seen.add(q)) {
+				throw new ExtensionException("a queue cannot be in a group more than once");
+			}
+		}
+		int m = queues.length;
+		this.members = queues.clone();
+		this.heap = new int[m];
+		this.positions = new int[m];
+		this.lengths = new int[m];
+		this.heapSize = 0;
+		this.totalLength = 0;
+		for (int i = 0; i < m; i++) {
+			Queue q = queues[i];
+			if (q.group != null && q.group != this) {
+				q.group.removeMember(q.groupIndex);
+			}
+			q.group = this;
+			q.groupIndex = i;
+			this.lengths[i] = q.size();
+			this.totalLength += this.lengths[i];
+			this.heap[i] = i;
+			this.positions[i] = i;
+		}
+		this.heapSize = m;
+		for (int k = m / 2 - 1; k >= 0; k--) {
+			siftDown(k);
+		}
+	}
+
+	/** Returns the number of queues in the group.
+	 */
+	public int size() {
+		return this.heapSize;
+	}
+
+	/** Returns the shortest queue of the group (the one given first among equally short queues), or null if the
+	 * group is empty.
+	 */
+	public Queue getShortest() {
+		return (this.heapSize == 0) ? null : this.members[this.heap[0]];
+	}
+
+	/** Returns the shorter of two different queues of the group chosen at random (the power of two choices), or null
+	 * if the group is empty. Takes O(1) and comes close to joining the shortest queue without looking at all of them.
+	 */
+	public Queue chooseTwo(MersenneTwisterFast rng) {
+		if (this.heapSize < 2) {
+			return getShortest();
+		}
+		int a = this.heap[rng.nextInt(this.heapSize)];
+		int b = this.heap[rng.nextInt(this.heapSize - 1)];
+		if (b == a) {
+			// the first choice is not available for the second one: take the last position instead
+			b = this.heap[this.heapSize - 1];
+		}
+		return (this.lengths[b] < this.lengths[a]) ? this.members[b] : this.members[a];
+	}
+
+	/** Returns aggregate statistics of all queues in the group: number of queues, total length, mean total length,
+	 * pooled mean wait time (total wait time of all elements over the number of elements in all queues) and max wait time.
+	 */
+	public double[] getStats() {
+		double meanLength = 0;
+		double waitTime = 0;
+		long numWaiting = 0;
+		double maxWaitTime = 0;
+		for (int k = 0; k < this.heapSize; k++) {
+			Queue q = this.members[this.heap[k]];
+			meanLength += q.getMeanSize();
+			long n = q.stats.numInserts - q.stats.numReneged - q.stats.numDropped;
+			if (n > 0) {
+				waitTime += q.getMeanWaitTime() * n;
+				numWaiting += n;
+			}
+			maxWaitTime = Math.max(maxWaitTime, q.getMaxWaitTime());
+		}
+		return new double[]{this.heapSize, this.totalLength, meanLength, (numWaiting == 0) ? 0.0 : waitTime / numWaiting,
+				maxWaitTime};
+	}
+
+	/** Notes a change in the length of the given member.
+	 */
+	void update(Queue q) {
+		int i = q.groupIndex;
+		int length = q.size();
+		int oldLength = this.lengths[i];
+		if (length == oldLength) {
+			return;
+		}
+		this.lengths[i] = length;
+		this.totalLength += length - oldLength;
+		if (length < oldLength) {
+			siftUp(this.positions[i]);
+		}
+		else {
+			siftDown(this.positions[i]);
+		}
+	}
+
+	/** Takes the member with the given index out of the group.
+	 */
+	private void removeMember(int i) {
+		this.totalLength -= this.lengths[i];
+		this.members[i].group = null;
+		this.members[i] = null;
+		int k = this.positions[i];
+		int last = this.heap[--this.heapSize];
+		if (k < this.heapSize) {
+			this.heap[k] = last;
+			this.positions[last] = k;
+			siftUp(k);
+			siftDown(this.positions[last]);
+		}
+	}
+
+	private boolean shorter(int a, int b) {
+		return this.lengths[a] < this.lengths[b] || (this.lengths[a] == this.lengths[b] && a < b);
+	}
+
+	private void siftUp(int k) {
+		int i = this.heap[k];
+		while (k > 0) {
+			int parent = (k - 1) >>> 1;
+			int p = this.heap[parent];
+			if (! shorter(i, p)) {
+				break;
+			}
+			this.heap[k] = p;
+			this.positions[p] = k;
+			k = parent;
+		}
+		this.heap[k] = i;
+		this.positions[i] = k;
+	}
+
+	private void siftDown(int k) {
+		int i = this.heap[k];
+		int half = this.heapSize >>> 1;
+		while (k < half) {
+			int child = 2 * k + 1;
+			int c = this.heap[child];
+			if (child + 1 < this.heapSize && shorter(this.heap[child + 1], c)) {
+				child++;
+				c = this.heap[child];
+			}
+			if (! shorter(c, i)) {
+				break;
+			}
+			this.heap[k] = c;
+			this.positions[c] = k;
+			k = child;
+		}
+		this.heap[k] = i;
+		this.positions[i] = k;
+	}
+
+	/** Appends the state of this group to the given buffer: a single line with its id and the ids of its members,
+	 * which must have been registered for export.
+	 */
+	void exportState(StringBuilder buf) {
+		buf.append("\"group\",").append(this.id);
+		for (int i = 0; i < this.members.length; i++) {
+			if (this.members[i] != null) {
+				buf.append(',').append(this.members[i].id);
+			}
+		}
+		buf.append('\n');
+	}
+
+	/* (non-Javadoc)
+	 * @see org.nlogo.core.ExtensionObject#dump(boolean, boolean, boolean)
+	 */
+	@Override
+	public String dump(boolean readable, boolean exporting, boolean reference) {
+		if (exporting && reference) {
+			// the group itself is exported by QueueExtension.exportWorld(), just refer to it by id
+			QueueExtension.register(this);
+			return Long.toString(this.id);
+		}
+		return toString();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.nlogo.core.ExtensionObject#getExtensionName()
+	 */
+	@Override
+	public String getExtensionName() {
+		return "queue";
+	}
+
+	/* (non-Javadoc)
+	 * @see org.nlogo.core.ExtensionObject#getNLTypeName()
+	 */
+	@Override
+	public String getNLTypeName() {
+		return "group";
+	}
+
+	/* (non-Javadoc)
+	 * @see org.nlogo.core.ExtensionObject#recursivelyEqual(java.lang.Object)
+	 */
+	@Override
+	public boolean recursivelyEqual(Object o) {
+		return o == this;
+	}
+
+	public String toString() {
+		return "group of " + this.heapSize + " queues with " + this.totalLength + " elements";
+	}
+
+}
@@ -0,0 +1,328 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.ExtensionManager;
+
+/** Export and import of the state of a {@link Queue} (for export-world and import-world, see {@link QueueExtension}):
+ * the elements, the statistics and the state of each feature the queue uses, as lines of comma-separated values.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class QueueState {
+
+	/** Appends the complete state of the given queue (elements and statistics) to the given buffer, as lines of 
+	 * comma-separated values: a header line, one line for each group of statistics and one line per element.
+	 * Objects in the queue are written as references (as in export-world), numbers are written directly.
+	 */
+	static void exportState(Queue q, StringBuilder buf) {
+		buf.append("\"queue\",").append(q.id).append(',').append(q.strategy).append(',').append(q.count).append('\n');
+		q.stats.exportState(buf);
+		if (q.sojourn != null) {
+			// the tracker is written by QueueExtension.exportWorld(), just refer to it by id
+			buf.append("\"tracker\",").append(q.sojourn.id).append('\n');
+		}
+		if (q.admission != null) {
+			q.admission.exportState(buf);
+		}
+		if (q.classStats != null) {
+			// start time, then ten values per class
+			ClassStats s = q.classStats;
+			buf.append("\"classes\",").append(s.startTime);
+			for (int c = 0; c < s.numClasses(); c++) {
+				buf.append(',').append(s.numArrivals[c]).append(',').append(s.numDepartures[c]).append(',').append(s.numLost[c])
+				   .append(',').append(s.totalWaitTime[c]).append(',').append(s.minWaitTime[c]).append(',').append(s.maxWaitTime[c])
+				   .append(',').append(s.length[c]).append(',').append(s.sumOfTimes[c]).append(',')
+				   .append(s.totalTimeWeightedLength[c]).append(',').append(s.lastChange[c]);
+			}
+			buf.append('\n');
+		}
+		if (q.station != null) {
+			// the service time reporter cannot be exported, only the constant service time
+			ServiceStation s = q.station;
+			buf.append("\"servers\",").append(s.numServers).append(',').append(s.serviceTime).append(',').append(s.busyTime)
+			   .append(',').append(s.numStarted).append(',').append(s.numCompleted).append(',').append(s.startTime)
+			   .append(',').append(s.nextSeqNo).append(',').append(s.serverTime).append(',').append(s.lastServerChange);
+			for (int i = 0; i < s.numBusy; i++) {
+				buf.append(',');
+				exportElement(buf, s.elems[i]);
+				buf.append(',').append(s.starts[i]).append(',').append(s.ends[i]).append(',').append(s.seqNos[i]);
+			}
+			buf.append('\n');
+		}
+		if (q.spill != null) {
+			buf.append("\"spill\",").append(q.spill.segmentLength).append('\n');
+		}
+		if (q.handles != null) {
+			// insertion numbers, then the cancelled handles and the handles still waiting
+			// (handles must not be reused, so the next insertion number is exported even if that element has left)
+			long next = (q.strategy == Queue.EVENT) ? q.calendar.nextSeqNo : q.nextSeqNo;
+			buf.append("\"handles\",").append(q.headSeqNo).append(',').append(next).append(',').append(q.numCancelled);
+			for (Long handle : q.cancelled) {
+				buf.append(',').append(handle.longValue());
+			}
+			for (Map.Entry<Long, QElem> e : q.handles.entrySet()) {
+				buf.append(',').append(e.getKey().longValue()).append(',');
+				exportElement(buf, e.getValue().getElem());
+				buf.append(',').append(e.getValue().getTime());
+			}
+			buf.append('\n');
+		}
+		if (q.deadlines != null) {
+			DeadlineHeap d = q.deadlines;
+			buf.append("\"deadlines\"");
+			for (int i = 0; i < d.size; i++) {
+				buf.append(',').append(d.deadlines[i]).append(',').append(d.handles[i]);
+			}
+			buf.append('\n');
+		}
+		// elements (including cancelled ones): FIFO and LIFO from head to tail, LIFO with seqNo once handles are used;
+		// heap in array order, events in any order, both with key and seqNo; the class comes last if there are classes
+		if (q.strategy == Queue.EVENT) {
+			CalendarQueue c = q.calendar;
+			for (int b = 0; b < c.buckets.length; b++) {
+				for (int slot = c.buckets[b]; slot != -1; slot = c.next[slot]) {
+					exportElement(buf, c.elems[slot]);
+					buf.append(',').append(c.times[slot]).append(',').append(c.dues[slot]).append(',').append(c.seqNos[slot]);
+					if (c.classIds != null) {
+						buf.append(',').append(c.classIds[slot]);
+					}
+					buf.append('\n');
+				}
+			}
+		}
+		else if (q.spill != null) {
+			for (QElem e : q.toArray(true)) {
+				exportElement(buf, e.getElem());
+				buf.append(',').append(e.getTime()).append('\n');
+			}
+		}
+		else {
+			for (int i = 0; i < q.count; i++) {
+				int index = (q.strategy == Queue.PRIORITY) ? i : (q.head + i) & (q.elems.length - 1);
+				exportElement(buf, q.elems[index]);
+				buf.append(',').append(q.times[index]);
+				if (q.strategy == Queue.PRIORITY) {
+					buf.append(',').append(q.priorities[index]).append(',').append(q.seqNos[index]);
+				}
+				else if (q.seqNos != null) {
+					buf.append(',').append(q.seqNos[index]);
+				}
+				if (q.classIds != null) {
+					buf.append(',').append(q.classIds[index]);
+				}
+				buf.append('\n');
+			}
+		}
+	}
+
+	static void exportElement(StringBuilder buf, Object elem) {
+		if (elem instanceof Double) {
+			buf.append(((Double)elem).doubleValue());
+			return;
+		}
+		// quote for CSV
+		String s = Dump.logoObject(elem, true, true);
+		buf.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"') buf.append('"');
+			buf.append(c);
+		}
+		buf.append('"');
+	}
+
+	/** Restores the state of the given queue from the lines written by {@link #exportState(Queue, StringBuilder)}, starting with 
+	 * the header line at the given index. Returns the index of the first line after the queue's state.
+	 */
+	static int importState(Queue q, List<String[]> lines, int start, ExtensionManager reader) throws ExtensionException {
+		try {
+			String[] line = lines.get(start);
+			q.init(Integer.parseInt(line[2]));
+			int numElements = Integer.parseInt(line[3]);
+			int i = start + 1;
+			while (i < lines.size() && (QueueStats.isStatsLine(lines.get(i)[0]) || isStatsLine(lines.get(i)[0]))) {
+				importStats(q, lines.get(i), reader);
+				i++;
+			}
+			if (i + numElements > lines.size()) {
+				throw new ExtensionException("queue " + q.id + ": expected " + numElements + " elements");
+			}
+			for (int n = 0; n < numElements; n++, i++) {
+				importElement(q, lines.get(i), reader);
+			}
+			if (q.strategy == Queue.PRIORITY) {
+				for (int n = 0; n < q.count; n++) {
+					q.nextSeqNo = Math.max(q.nextSeqNo, q.seqNos[n] + 1);
+				}
+			}
+			return i;
+		}
+		catch (RuntimeException e) {
+			throw new ExtensionException("cannot import queue: " + e.getMessage());
+		}
+	}
+
+	private static boolean isStatsLine(String type) {
+		return type.equals("servers") || type.equals("spill") || type.equals("handles") || type.equals("deadlines") 
+				|| type.equals("capacity") || type.equals("classes") || type.equals("tracker");
+	}
+
+	private static void importStats(Queue q, String[] line, ExtensionManager reader) throws ExtensionException {
+		if (QueueStats.isStatsLine(line[0])) {
+			q.stats.importStats(line);
+		}
+		else if (line[0].equals("capacity")) {
+			q.setCapacity(Integer.parseInt(line[1]), Integer.parseInt(line[2]));
+			q.admission.importState(line);
+		}
+		else if (line[0].equals("classes")) {
+			q.useClasses();
+			ClassStats s = q.classStats;
+			s.startTime = Double.parseDouble(line[1]);
+			s.grow((line.length - 2) / 10);
+			for (int k = 2, c = 0; k + 9 < line.length; k += 10, c++) {
+				s.numArrivals[c] = Long.parseLong(line[k]);
+				s.numDepartures[c] = Long.parseLong(line[k + 1]);
+				s.numLost[c] = Long.parseLong(line[k + 2]);
+				s.totalWaitTime[c] = Double.parseDouble(line[k + 3]);
+				s.minWaitTime[c] = Double.parseDouble(line[k + 4]);
+				s.maxWaitTime[c] = Double.parseDouble(line[k + 5]);
+				s.length[c] = Integer.parseInt(line[k + 6]);
+				s.sumOfTimes[c] = Double.parseDouble(line[k + 7]);
+				s.totalTimeWeightedLength[c] = Double.parseDouble(line[k + 8]);
+				s.lastChange[c] = Double.parseDouble(line[k + 9]);
+			}
+		}
+		else if (line[0].equals("servers")) {
+			ServiceStation s = new ServiceStation(Integer.parseInt(line[1]), Double.parseDouble(line[6]));
+			s.serviceTime = Double.parseDouble(line[2]);
+			s.busyTime = Double.parseDouble(line[3]);
+			s.numStarted = Long.parseLong(line[4]);
+			s.numCompleted = Long.parseLong(line[5]);
+			s.nextSeqNo = Long.parseLong(line[7]);
+			s.serverTime = Double.parseDouble(line[8]);
+			s.lastServerChange = Double.parseDouble(line[9]);
+			// services in progress come in heap order, so they just have to be appended
+			for (int k = 10; k + 3 < line.length; k += 4) {
+				int i = s.numBusy++;
+				s.elems[i] = importTracked(q, line[k], false, reader);
+				s.starts[i] = Double.parseDouble(line[k + 1]);
+				s.ends[i] = Double.parseDouble(line[k + 2]);
+				s.seqNos[i] = Long.parseLong(line[k + 3]);
+			}
+			q.station = s;
+		}
+		else if (line[0].equals("tracker")) {
+			q.sojourn = QueueExtension.lookupTracker(Long.parseLong(line[1]));
+		}
+		else if (line[0].equals("spill")) {
+			q.spill = new SpillStore(Integer.parseInt(line[1]));
+			q.elems = null;
+			q.times = null;
+		}
+		else if (line[0].equals("handles")) {
+			q.headSeqNo = Long.parseLong(line[1]);
+			q.nextSeqNo = Long.parseLong(line[2]);
+			if (q.strategy == Queue.EVENT) {
+				q.calendar.nextSeqNo = q.nextSeqNo;
+			}
+			q.numCancelled = Integer.parseInt(line[3]);
+			q.handles = new HashMap<Long, QElem>();
+			q.cancelled = new HashSet<Long>();
+			int k = 4;
+			for (int n = 0; n < q.numCancelled; n++, k++) {
+				q.cancelled.add(Long.parseLong(line[k]));
+			}
+			for (; k + 2 < line.length; k += 3) {
+				q.handles.put(Long.parseLong(line[k]), new QElem(importTracked(q, line[k + 1], true, reader), Double.parseDouble(line[k + 2])));
+			}
+			if (q.strategy == Queue.LIFO) {
+				// the elements come with their insertion numbers
+				q.seqNos = new long[q.elems.length];
+			}
+		}
+		else if (line[0].equals("deadlines")) {
+			q.deadlines = new DeadlineHeap();
+			for (int k = 1; k + 1 < line.length; k += 2) {
+				q.deadlines.add(Double.parseDouble(line[k]), Long.parseLong(line[k + 1]));
+			}
+		}
+	}
+
+	private static void importElement(Queue q, String[] line, ExtensionManager reader) throws ExtensionException {
+		Object elem = importTracked(q, line[0], false, reader);
+		double time = Double.parseDouble(line[1]);
+		long seqNo = q.headSeqNo + q.count;
+		int classId = (q.classIds == null) ? 0 : Integer.parseInt(line[line.length - 1]);
+		q.rendered = null;
+		if (q.strategy == Queue.EVENT) {
+			seqNo = Long.parseLong(line[3]);
+			q.calendar.insert(elem, Double.parseDouble(line[2]), time, seqNo, classId);
+			q.count++;
+		}
+		else if (q.spill != null) {
+			q.spill.add(elem, time);
+			q.count++;
+		}
+		else {
+			q.ensureCapacity(q.count + 1);
+			// elements come in array order, so they just have to be appended
+			int index = (q.strategy == Queue.PRIORITY) ? q.count : (q.head + q.count) & (q.elems.length - 1);
+			q.elems[index] = elem;
+			q.times[index] = time;
+			if (q.strategy == Queue.PRIORITY) {
+				seqNo = Long.parseLong(line[3]);
+				q.priorities[index] = Double.parseDouble(line[2]);
+				q.seqNos[index] = seqNo;
+			}
+			else if (q.seqNos != null) {
+				seqNo = Long.parseLong(line[2]);
+				q.seqNos[index] = seqNo;
+			}
+			if (q.classIds != null) {
+				q.classIds[index] = classId;
+			}
+			q.count++;
+		}
+		if (q.cancelled == null || ! q.cancelled.contains(seqNo)) {
+			q.stats.addWaiting(time);
+		}
+	}
+
+	/** Reads back an element of the given queue (or only a reference to one, see {@link SojournTracker#claim(String, boolean)}),
+	 * which is the very object its sojourn tracker tracks if it was exported as a tracked element.
+	 */
+	private static Object importTracked(Queue q, String s, boolean reference, ExtensionManager reader) throws ExtensionException {
+		Object elem = (q.sojourn == null) ? null : q.sojourn.claim(s, reference);
+		return (elem != null) ? elem : importObject(s, reader);
+	}
+	
+	static Object importObject(String s, ExtensionManager reader) throws ExtensionException {
+		if (s.length() > 0 && (Character.isDigit(s.charAt(0)) || s.charAt(0) == '-')) {
+			// fast path for numbers
+			try {
+				return Double.valueOf(s);
+			}
+			catch (NumberFormatException e) {
+				// fall through to the NetLogo reader
+			}
+		}
+		try {
+			return reader.readFromString(s);
+		}
+		catch (Exception e) {
+			throw new ExtensionException("cannot import queue element " + s + ": " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,399 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import java.util.Arrays;
+
+/** The statistics of a queue, accumulated from the events that change its length: arrivals, departures, reneging
+ * elements, arrivals that are not admitted (blocked) and elements dropped to make room for an arrival. Besides the
+ * statistics measures, it keeps the state of the queue they depend on, i.e. its length and the sum of the insertion
+ * times of its elements. The class does not depend on NetLogo, so {@link TraceReplay} can feed it the events of a
+ * trace and report exactly what the queue reported.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class QueueStats {
+
+	// length of the queue and running sum of the insertion times of its elements (with Neumaier compensation term)
+	int length;
+	double sumOfTimes;
+	double sumOfTimesCompensation;
+	// statistics measures
+	double maxWaitTime;
+	double minWaitTime;
+	double totalWaitTime;
+	LogHistogram waitTimes;
+	int maxSize;
+	double totalTimeWeightedLength;
+	// timeAtLength[k] is the total time the queue has had length k (grows as needed)
+	double[] timeAtLength;
+	long numInserts;
+	// reneging statistics: number of cancelled elements (including the expired ones) and their time in the queue
+	long numReneged;
+	double totalRenegeTime;
+	double maxRenegeTime;
+	long numExpired;
+	// loss statistics of a queue with limited capacity: arrivals that were not admitted, and elements dropped from
+	// the queue to make room for an arrival
+	long numBlocked;
+	long numDropped;
+	// statistics over a trailing time window (only if set up)
+	SlidingWindow window;
+	double timeOfLastChange;
+	double initTime;
+
+	/** Creates the statistics of an empty queue, starting at the specified time.
+	 */
+	QueueStats(double currentTime) {
+		this(0, currentTime, 0.0);
+	}
+
+	/** Creates the statistics of a queue with the given length and sum of the insertion times of its elements,
+	 * starting at the specified time.
+	 */
+	QueueStats(int length, double currentTime, double sumOfTimes) {
+		this.length = length;
+		this.sumOfTimes = sumOfTimes;
+		this.waitTimes = new LogHistogram();
+		reset(currentTime);
+	}
+
+	/** Resets the statistics measures at the specified time (the elements still waiting are kept).
+	 */
+	void reset(double currentTime) {
+		this.maxSize = 0;
+		this.numInserts = 0;
+		this.maxWaitTime = 0;
+		this.minWaitTime = Double.MAX_VALUE;
+		this.totalWaitTime = 0;
+		this.waitTimes.reset();
+		this.totalTimeWeightedLength = 0;
+		this.timeAtLength = new double[Queue.INITIAL_CAPACITY];
+		this.numReneged = 0;
+		this.totalRenegeTime = 0;
+		this.maxRenegeTime = 0;
+		this.numExpired = 0;
+		this.numBlocked = 0;
+		this.numDropped = 0;
+		if (this.window != null) {
+			this.window.reset(currentTime);
+		}
+		this.timeOfLastChange = currentTime;
+		this.initTime = currentTime;
+	}
+
+	/** Accumulates the time-weighted length of the queue up to the specified time.
+	 */
+	void advanceTime(double currentTime) {
+		double duration = currentTime - this.timeOfLastChange;
+		int length = this.length;
+		this.totalTimeWeightedLength += duration * length;
+		if (length >= this.timeAtLength.length) {
+			this.timeAtLength = Arrays.copyOf(this.timeAtLength, Math.max(2 * this.timeAtLength.length, length + 1));
+		}
+		this.timeAtLength[length] += duration;
+		if (this.window != null) {
+			this.window.addLength(this.timeOfLastChange, currentTime, length);
+		}
+		this.timeOfLastChange = currentTime;
+	}
+
+	/** An element arrives (and is admitted) at the specified time.
+	 */
+	void arrive(double currentTime) {
+		arrive(1, currentTime);
+	}
+
+	/** The given number of elements arrive (and are admitted) at the specified time.
+	 */
+	void arrive(int n, double currentTime) {
+		advanceTime(currentTime);
+		this.length += n;
+		this.numInserts += n;
+		addToSumOfTimes(n * currentTime);
+		if (this.length > this.maxSize) {
+			this.maxSize = this.length;
+		}
+	}
+
+	/** The element inserted at the given time leaves the queue (is served) at the specified time.
+	 */
+	void depart(double insertionTime, double currentTime) {
+		double waitTime = currentTime - insertionTime;
+		this.totalWaitTime += waitTime;
+		if (waitTime > this.maxWaitTime) {
+			this.maxWaitTime = waitTime;
+		}
+		if (waitTime < this.minWaitTime) {
+			this.minWaitTime = waitTime;
+		}
+		this.waitTimes.record(waitTime);
+		if (this.window != null) {
+			this.window.addDeparture(currentTime, waitTime);
+		}
+		leave(insertionTime, currentTime);
+	}
+
+	/** The element inserted at the given time leaves the queue without being served at the specified time.
+	 */
+	void renege(double insertionTime, double currentTime) {
+		double renegeTime = currentTime - insertionTime;
+		this.numReneged++;
+		this.totalRenegeTime += renegeTime;
+		if (renegeTime > this.maxRenegeTime) {
+			this.maxRenegeTime = renegeTime;
+		}
+		leave(insertionTime, currentTime);
+	}
+
+	/** An element arriving at the specified time is not admitted to the queue.
+	 */
+	void block(double currentTime) {
+		advanceTime(currentTime);
+		this.numBlocked++;
+	}
+
+	/** The element inserted at the given time is dropped from the queue at the specified time to make room for an
+	 * arrival.
+	 */
+	void drop(double insertionTime, double currentTime) {
+		this.numDropped++;
+		leave(insertionTime, currentTime);
+	}
+
+	private void leave(double insertionTime, double currentTime) {
+		advanceTime(currentTime);
+		this.length--;
+		if (this.length == 0) {
+			// start afresh to avoid accumulating rounding errors
+			this.sumOfTimes = 0;
+			this.sumOfTimesCompensation = 0;
+		}
+		else {
+			addToSumOfTimes(-insertionTime);
+		}
+	}
+
+	/** Adds an element inserted at the given time that is waiting in the queue, without counting an arrival
+	 * (used when the elements of a queue are restored).
+	 */
+	void addWaiting(double insertionTime) {
+		this.length++;
+		addToSumOfTimes(insertionTime);
+	}
+
+	/** Adds the given value to the running sum of insertion times, using Neumaier's variant of
+	 * Kahan summation to keep the rounding error independent of the number of operations.
+	 */
+	private void addToSumOfTimes(double value) {
+		double sum = this.sumOfTimes + value;
+		if (Math.abs(this.sumOfTimes) >= Math.abs(value)) {
+			this.sumOfTimesCompensation += (this.sumOfTimes - sum) + value;
+		}
+		else {
+			this.sumOfTimesCompensation += (value - sum) + this.sumOfTimes;
+		}
+		this.sumOfTimes = sum;
+	}
+
+	double getMeanWaitTime() {
+		// cancelled and dropped elements do not count, elements still waiting do
+		long numWaiting = this.numInserts - this.numReneged - this.numDropped;
+		if (numWaiting <= 0) return 0.0;
+		// wait-time-so-far of all elements = length * timeOfLastChange - sum of their insertion times
+		double waiting = this.length * this.timeOfLastChange - (this.sumOfTimes + this.sumOfTimesCompensation);
+		return (this.totalWaitTime + waiting) / numWaiting;
+	}
+
+	double getMeanSize() {
+		double duration = this.timeOfLastChange - this.initTime;
+		if (duration >= 0 & duration <= 0) return 0.0;
+		return this.totalTimeWeightedLength / duration;
+	}
+
+	/** Returns the largest length the queue has had for some time (at least length 0).
+	 */
+	int getMaxLengthSeen() {
+		int maxLength = this.timeAtLength.length - 1;
+		while (maxLength > 0 && this.timeAtLength[maxLength] == 0) {
+			maxLength--;
+		}
+		return maxLength;
+	}
+
+	/** Returns the time-weighted distribution of the queue length, i.e. for each length k from 0 up to the
+	 * max length the fraction of time the queue has had length k. Returns an empty array if no time has passed.
+	 */
+	double[] getLengthDistribution() {
+		double duration = this.timeOfLastChange - this.initTime;
+		if (duration >= 0 & duration <= 0) return new double[0];
+		int maxLength = getMaxLengthSeen();
+		double[] distribution = new double[maxLength + 1];
+		for (int k = 0; k <= maxLength; k++) {
+			distribution[k] = this.timeAtLength[k] / duration;
+		}
+		return distribution;
+	}
+
+	/** Returns the given percentile (between 0 and 100) of the time-weighted queue length, i.e. the smallest
+	 * length k such that the queue has had length k or less for at least p percent of the time.
+	 */
+	int getLengthPercentile(double p) {
+		double duration = this.timeOfLastChange - this.initTime;
+		if (duration >= 0 & duration <= 0) return 0;
+		// allow for rounding errors in the accumulated times
+		double threshold = p / 100.0 * duration * (1 - 1e-12);
+		double cumulative = 0;
+		int maxLength = getMaxLengthSeen();
+		for (int k = 0; k < maxLength; k++) {
+			cumulative += this.timeAtLength[k];
+			if (cumulative >= threshold && this.timeAtLength[k] > 0) {
+				return k;
+			}
+		}
+		return maxLength;
+	}
+
+	/** Returns the reneging statistics: number of cancelled elements, mean and max time in the queue before cancelling,
+	 * and the number of cancelled elements that have expired.
+	 */
+	double[] getRenegeStats() {
+		double mean = (this.numReneged == 0) ? 0.0 : this.totalRenegeTime / this.numReneged;
+		return new double[]{this.numReneged, mean, this.maxRenegeTime, this.numExpired};
+	}
+
+	/** Returns the loss statistics: the blocking probability (the fraction of arrivals that were not admitted),
+	 * the number of arrivals that were not admitted, and the number of elements dropped to make room for an arrival.
+	 */
+	double[] getLossStats() {
+		long numArrivals = this.numInserts + this.numBlocked;
+		double blocking = (numArrivals == 0) ? 0.0 : (double)this.numBlocked / numArrivals;
+		return new double[]{blocking, this.numBlocked, this.numDropped};
+	}
+
+	/** Returns the mean length over the trailing time window ending at the specified time (0 without a window).
+	 */
+	double getWindowMeanSize(double currentTime) {
+		if (this.window == null) return 0.0;
+		return this.window.getMeanLength(Math.max(currentTime, this.timeOfLastChange), this.timeOfLastChange, this.length);
+	}
+
+	/** Returns the mean wait time of the elements that have left the queue during the trailing time window ending
+	 * at the specified time (0 without a window).
+	 */
+	double getWindowMeanWaitTime(double currentTime) {
+		if (this.window == null) return 0.0;
+		return this.window.getMeanWaitTime(Math.max(currentTime, this.timeOfLastChange));
+	}
+
+	/** Returns the number of elements per time unit that have left the queue during the trailing time window
+	 * ending at the specified time (0 without a window).
+	 */
+	double getWindowThroughput(double currentTime) {
+		if (this.window == null) return 0.0;
+		return this.window.getThroughput(Math.max(currentTime, this.timeOfLastChange));
+	}
+
+	/** Appends the statistics as lines of comma-separated values to the given buffer (see
+	 * {@link QueueState#exportState(Queue, StringBuilder)}).
+	 */
+	void exportState(StringBuilder buf) {
+		buf.append("\"stats\",").append(this.maxWaitTime).append(',').append(this.minWaitTime).append(',')
+		   .append(this.totalWaitTime).append(',').append(this.maxSize).append(',').append(this.totalTimeWeightedLength)
+		   .append(',').append(this.numInserts).append(',').append(this.timeOfLastChange).append(',').append(this.initTime)
+		   .append(',').append(this.numReneged).append(',').append(this.totalRenegeTime).append(',').append(this.maxRenegeTime)
+		   .append(',').append(this.numExpired).append(',').append(this.numBlocked).append(',').append(this.numDropped)
+		   .append('\n');
+		buf.append("\"length-distribution\"");
+		int maxLength = getMaxLengthSeen();
+		for (int k = 0; k <= maxLength; k++) {
+			buf.append(',').append(this.timeAtLength[k]);
+		}
+		buf.append('\n');
+		LogHistogram h = this.waitTimes;
+		buf.append("\"wt-histogram\",").append(h.minExponent).append(',').append(h.zeroCount).append(',')
+		   .append(h.totalCount).append(',').append(h.min).append(',').append(h.max);
+		for (int i = 0; h.counts != null && i < h.counts.length; i++) {
+			if (h.counts[i] != 0) {
+				buf.append(',').append(i).append(',').append(h.counts[i]);
+			}
+		}
+		buf.append('\n');
+		if (this.window != null) {
+			SlidingWindow w = this.window;
+			buf.append("\"window\",").append(w.width).append(',').append(w.bucketNos.length).append(',').append(w.startTime);
+			for (int i = 0; i < w.bucketNos.length; i++) {
+				if (w.bucketNos[i] != Long.MIN_VALUE) {
+					buf.append(',').append(i).append(',').append(w.bucketNos[i]).append(',').append(w.timeWeightedLength[i])
+					   .append(',').append(w.totalWaitTime[i]).append(',').append(w.numDepartures[i]);
+				}
+			}
+			buf.append('\n');
+		}
+	}
+
+	static boolean isStatsLine(String type) {
+		return type.equals("stats") || type.equals("length-distribution") || type.equals("wt-histogram") || type.equals("window");
+	}
+
+	/** Restores the statistics from one of the lines written by {@link #exportState(StringBuilder)}.
+	 */
+	void importStats(String[] line) {
+		if (line[0].equals("stats")) {
+			this.maxWaitTime = Double.parseDouble(line[1]);
+			this.minWaitTime = Double.parseDouble(line[2]);
+			this.totalWaitTime = Double.parseDouble(line[3]);
+			this.maxSize = Integer.parseInt(line[4]);
+			this.totalTimeWeightedLength = Double.parseDouble(line[5]);
+			this.numInserts = Long.parseLong(line[6]);
+			this.timeOfLastChange = Double.parseDouble(line[7]);
+			this.initTime = Double.parseDouble(line[8]);
+			this.numReneged = Long.parseLong(line[9]);
+			this.totalRenegeTime = Double.parseDouble(line[10]);
+			this.maxRenegeTime = Double.parseDouble(line[11]);
+			this.numExpired = Long.parseLong(line[12]);
+			this.numBlocked = Long.parseLong(line[13]);
+			this.numDropped = Long.parseLong(line[14]);
+		}
+		else if (line[0].equals("length-distribution")) {
+			this.timeAtLength = new double[Math.max(Queue.INITIAL_CAPACITY, line.length - 1)];
+			for (int k = 1; k < line.length; k++) {
+				this.timeAtLength[k - 1] = Double.parseDouble(line[k]);
+			}
+		}
+		else if (line[0].equals("wt-histogram")) {
+			LogHistogram h = this.waitTimes;
+			h.reset();
+			h.minExponent = Integer.parseInt(line[1]);
+			h.zeroCount = Long.parseLong(line[2]);
+			h.totalCount = Long.parseLong(line[3]);
+			h.min = Double.parseDouble(line[4]);
+			h.max = Double.parseDouble(line[5]);
+			int maxIndex = -1;
+			for (int k = 6; k + 1 < line.length; k += 2) {
+				maxIndex = Math.max(maxIndex, Integer.parseInt(line[k]));
+			}
+			if (maxIndex >= 0) {
+				int numOctaves = Math.max(LogHistogram.INITIAL_OCTAVES, maxIndex / LogHistogram.SUB_BUCKETS + 1);
+				h.counts = new long[numOctaves * LogHistogram.SUB_BUCKETS];
+				for (int k = 6; k + 1 < line.length; k += 2) {
+					h.counts[Integer.parseInt(line[k])] = Long.parseLong(line[k + 1]);
+				}
+			}
+		}
+		else if (line[0].equals("window")) {
+			SlidingWindow w = new SlidingWindow(Double.parseDouble(line[1]), Integer.parseInt(line[2]), Double.parseDouble(line[3]));
+			for (int k = 4; k + 4 < line.length; k += 5) {
+				int i = Integer.parseInt(line[k]);
+				w.bucketNos[i] = Long.parseLong(line[k + 1]);
+				w.timeWeightedLength[i] = Double.parseDouble(line[k + 2]);
+				w.totalWaitTime[i] = Double.parseDouble(line[k + 3]);
+				w.numDepartures[i] = Long.parseLong(line[k + 4]);
+			}
+			this.window = w;
+		}
+	}
+
+}
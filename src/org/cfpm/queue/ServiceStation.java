@@ -0,0 +1,227 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import java.util.Arrays;
+
+import org.nlogo.api.AnonymousReporter;
+import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+
+/** The servers of a queue that acts as a service station: up to {@link #numServers} elements are served at the
+ * same time, each for a service time that is either constant or computed by an anonymous reporter when the service
+ * starts. The services in progress are kept in a binary min-heap ordered by their end time (services ending at the
+ * same time in the order in which they started), so the next service to complete is always at index 0.
+ * <p>
+ * Besides the number of started and completed services, the station accumulates the total busy time of all
+ * servers and the server time (the number of servers integrated over time, which changes when servers are added or
+ * removed), from which utilisation and throughput are derived.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class ServiceStation {
+
+	int numServers;
+	// constant service time (used if there is no reporter)
+	double serviceTime;
+	AnonymousReporter serviceTimeReporter;
+	// services in progress (a binary min-heap of numBusy entries): element, start time, end time and start number
+	Object[] elems;
+	double[] starts;
+	double[] ends;
+	long[] seqNos;
+	int numBusy;
+	long nextSeqNo;
+	// statistics: busy time of all completed services, counted from startTime
+	double busyTime;
+	long numStarted;
+	long numCompleted;
+	double startTime;
+	// number of servers integrated over time, from startTime up to the last change of the number of servers
+	double serverTime;
+	double lastServerChange;
+
+	ServiceStation(int numServers, double startTime) {
+		this.elems = new Object[0];
+		this.starts = new double[0];
+		this.ends = new double[0];
+		this.seqNos = new long[0];
+		this.numBusy = 0;
+		this.nextSeqNo = 0;
+		this.numServers = 0;
+		setNumServers(numServers, startTime);
+		resetStats(startTime);
+	}
+
+	/** Changes the number of servers at the specified time. Services in progress are not affected, so there have to be 
+	 * at least as many servers as there are busy ones.
+	 */
+	void setNumServers(int numServers, double currentTime) {
+		this.serverTime = getServerTime(currentTime);
+		this.lastServerChange = Math.max(currentTime, this.lastServerChange);
+		this.numServers = numServers;
+		if (numServers > this.elems.length) {
+			this.elems = Arrays.copyOf(this.elems, numServers);
+			this.starts = Arrays.copyOf(this.starts, numServers);
+			this.ends = Arrays.copyOf(this.ends, numServers);
+			this.seqNos = Arrays.copyOf(this.seqNos, numServers);
+		}
+	}
+
+	void setServiceTime(double serviceTime, AnonymousReporter reporter) {
+		this.serviceTime = serviceTime;
+		this.serviceTimeReporter = reporter;
+	}
+
+	void resetStats(double currentTime) {
+		this.busyTime = 0;
+		this.numStarted = 0;
+		this.numCompleted = 0;
+		this.startTime = currentTime;
+		this.serverTime = 0;
+		this.lastServerChange = currentTime;
+	}
+
+	boolean hasFreeServer() {
+		return this.numBusy < this.numServers;
+	}
+
+	/** Returns true if a service in progress ends at or before the specified time.
+	 */
+	boolean hasDueService(double currentTime) {
+		return this.numBusy > 0 && this.ends[0] <= currentTime;
+	}
+
+	/** Returns the service time for the given element: either the constant service time or the result of the
+	 * service time reporter, which is run in the given context.
+	 */
+	double getServiceTime(Object elem, Context context) throws ExtensionException {
+		if (this.serviceTimeReporter == null) {
+			return this.serviceTime;
+		}
+		Object result = this.serviceTimeReporter.report(context, new Object[]{elem});
+		if (! (result instanceof Double)) {
+			throw new ExtensionException("service time is not a number: " + Dump.logoObject(result));
+		}
+		double time = ((Double)result).doubleValue();
+		if (! (time >= 0)) {
+			throw new ExtensionException(time + " is not a valid service time.");
+		}
+		return time;
+	}
+
+	/** Starts serving the given element at the specified time, for the given service time.
+	 * Must only be called if there is a free server.
+	 */
+	void start(Object elem, double currentTime, double serviceTime) {
+		this.numStarted++;
+		// add at the bottom of the heap and restore the heap property
+		int i = this.numBusy++;
+		double end = currentTime + serviceTime;
+		long seqNo = this.nextSeqNo++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (! before(end, seqNo, parent)) break;
+			move(parent, i);
+			i = parent;
+		}
+		set(i, elem, currentTime, end, seqNo);
+	}
+
+	/** Completes the service that ends first and returns its element. Must only be called if a server is busy.
+	 */
+	Object completeFirst() {
+		Object elem = this.elems[0];
+		this.busyTime += accountedTime(0, this.ends[0]);
+		this.numCompleted++;
+		// move the last service into the hole at the root and sift it down
+		int last = --this.numBusy;
+		Object lastElem = this.elems[last];
+		double lastStart = this.starts[last];
+		double lastEnd = this.ends[last];
+		long lastSeqNo = this.seqNos[last];
+		this.elems[last] = null;
+		if (last > 0) {
+			int i = 0;
+			int half = last >>> 1;
+			while (i < half) {
+				int child = (i << 1) + 1;
+				if (child + 1 < last && before(this.ends[child + 1], this.seqNos[child + 1], child)) child++;
+				if (! before(this.ends[child], this.seqNos[child], lastEnd, lastSeqNo)) break;
+				move(child, i);
+				i = child;
+			}
+			set(i, lastElem, lastStart, lastEnd, lastSeqNo);
+		}
+		return elem;
+	}
+
+	/** Returns true if a service with the given end time and start number ends before the service at heap index i.
+	 */
+	private boolean before(double end, long seqNo, int i) {
+		return before(end, seqNo, this.ends[i], this.seqNos[i]);
+	}
+
+	private static boolean before(double end, long seqNo, double otherEnd, long otherSeqNo) {
+		if (end < otherEnd) return true;
+		if (end > otherEnd) return false;
+		return seqNo < otherSeqNo;
+	}
+
+	private void move(int from, int to) {
+		set(to, this.elems[from], this.starts[from], this.ends[from], this.seqNos[from]);
+	}
+
+	private void set(int i, Object elem, double start, double end, long seqNo) {
+		this.elems[i] = elem;
+		this.starts[i] = start;
+		this.ends[i] = end;
+		this.seqNos[i] = seqNo;
+	}
+
+	/** Returns the busy time of the service at heap index i up to the given time, counted from the start of the statistics.
+	 */
+	private double accountedTime(int i, double until) {
+		return Math.max(0.0, until - Math.max(this.starts[i], this.startTime));
+	}
+
+	/** Returns the total busy time of all servers up to the specified time (including services still in progress).
+	 */
+	double getBusyTime(double currentTime) {
+		double total = this.busyTime;
+		for (int i = 0; i < this.numBusy; i++) {
+			total += accountedTime(i, Math.min(currentTime, this.ends[i]));
+		}
+		return total;
+	}
+
+	/** Returns the number of servers integrated over time up to the specified time.
+	 */
+	double getServerTime(double currentTime) {
+		return this.serverTime + this.numServers * Math.max(0.0, currentTime - this.lastServerChange);
+	}
+
+	/** Returns the fraction of time the servers have been busy up to the specified time.
+	 */
+	double getUtilisation(double currentTime) {
+		double serverTime = getServerTime(currentTime);
+		if (! (serverTime > 0)) {
+			return 0.0;
+		}
+		return getBusyTime(currentTime) / serverTime;
+	}
+
+	/** Returns the number of completed services per time unit up to the specified time.
+	 */
+	double getThroughput(double currentTime) {
+		double duration = currentTime - this.startTime;
+		if (duration <= 0) {
+			return 0.0;
+		}
+		return this.numCompleted / duration;
+	}
+
+}
@@ -0,0 +1,149 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import java.util.Arrays;
+
+/** Statistics of a queue over a trailing window of simulated time. The window is divided into a fixed number
+ * of buckets of equal width, kept in a ring; each bucket accumulates the time-weighted length, the number of
+ * departures and their total wait time during its interval. Updates are O(1) and memory is bounded by the
+ * number of buckets. Reports cover the buckets of the last window width up to the specified time, so the
+ * window effectively slides in steps of one bucket width.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class SlidingWindow {
+
+	final static int DEFAULT_NUM_BUCKETS = 20;
+
+	double width;
+	double bucketWidth;
+	// per bucket: its absolute number (floor(time / bucketWidth)), or Long.MIN_VALUE if unused
+	long[] bucketNos;
+	double[] timeWeightedLength;
+	double[] totalWaitTime;
+	long[] numDepartures;
+	// the window's statistics start at this time (e.g. when the window was set up)
+	double startTime;
+
+	SlidingWindow(double width, int numBuckets, double startTime) {
+		this.width = width;
+		this.bucketWidth = width / numBuckets;
+		this.bucketNos = new long[numBuckets];
+		this.timeWeightedLength = new double[numBuckets];
+		this.totalWaitTime = new double[numBuckets];
+		this.numDepartures = new long[numBuckets];
+		reset(startTime);
+	}
+
+	void reset(double startTime) {
+		Arrays.fill(this.bucketNos, Long.MIN_VALUE);
+		this.startTime = startTime;
+	}
+
+	private long bucketNo(double time) {
+		return (long)Math.floor(time / this.bucketWidth);
+	}
+
+	/** Returns the ring index for the given bucket number, clearing the bucket if it still holds old data.
+	 */
+	private int bucket(long bucketNo) {
+		int i = (int)Math.floorMod(bucketNo, (long)this.bucketNos.length);
+		if (this.bucketNos[i] != bucketNo) {
+			this.bucketNos[i] = bucketNo;
+			this.timeWeightedLength[i] = 0;
+			this.totalWaitTime[i] = 0;
+			this.numDepartures[i] = 0;
+		}
+		return i;
+	}
+
+	/** Adds the time-weighted length for the interval from the given time to the given time.
+	 */
+	void addLength(double from, double to, int length) {
+		if (to <= from) {
+			return;
+		}
+		long first = bucketNo(from);
+		long last = bucketNo(to);
+		// only the last few buckets are still relevant
+		first = Math.max(first, last - this.bucketNos.length + 1);
+		for (long b = first; b <= last; b++) {
+			double overlap = Math.min(to, (b + 1) * this.bucketWidth) - Math.max(from, b * this.bucketWidth);
+			if (overlap > 0) {
+				this.timeWeightedLength[bucket(b)] += overlap * length;
+			}
+		}
+	}
+
+	void addDeparture(double time, double waitTime) {
+		int i = bucket(bucketNo(time));
+		this.totalWaitTime[i] += waitTime;
+		this.numDepartures[i]++;
+	}
+
+	/** Returns the start of the window reported at the given time.
+	 */
+	private double windowStart(double currentTime) {
+		long firstBucket = bucketNo(currentTime) - this.bucketNos.length + 1;
+		return Math.max(this.startTime, firstBucket * this.bucketWidth);
+	}
+
+	private boolean inWindow(int i, double currentTime) {
+		long current = bucketNo(currentTime);
+		return this.bucketNos[i] > current - this.bucketNos.length && this.bucketNos[i] <= current;
+	}
+
+	/** Returns the mean length over the window, where the queue had the given length since the given time of
+	 * last change (which has not been added to the buckets yet).
+	 */
+	double getMeanLength(double currentTime, double timeOfLastChange, int length) {
+		double start = windowStart(currentTime);
+		double duration = currentTime - start;
+		if (duration <= 0) {
+			return 0.0;
+		}
+		double total = 0;
+		for (int i = 0; i < this.bucketNos.length; i++) {
+			if (inWindow(i, currentTime)) {
+				total += this.timeWeightedLength[i];
+			}
+		}
+		total += length * (currentTime - Math.max(timeOfLastChange, start));
+		return total / duration;
+	}
+
+	/** Returns the mean wait time of the elements that have left the queue during the window.
+	 */
+	double getMeanWaitTime(double currentTime) {
+		double total = 0;
+		long num = 0;
+		for (int i = 0; i < this.bucketNos.length; i++) {
+			if (inWindow(i, currentTime)) {
+				total += this.totalWaitTime[i];
+				num += this.numDepartures[i];
+			}
+		}
+		if (num == 0) return 0.0;
+		return total / num;
+	}
+
+	/** Returns the number of elements that have left the queue during the window, per time unit.
+	 */
+	double getThroughput(double currentTime) {
+		double duration = currentTime - windowStart(currentTime);
+		if (duration <= 0) {
+			return 0.0;
+		}
+		long num = 0;
+		for (int i = 0; i < this.bucketNos.length; i++) {
+			if (inWindow(i, currentTime)) {
+				num += this.numDepartures[i];
+			}
+		}
+		return num / duration;
+	}
+
+}
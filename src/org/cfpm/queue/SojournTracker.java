@@ -0,0 +1,136 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.ExtensionManager;
+
+/** Tracks the end-to-end sojourn time of elements in a network of queues, i.e. the time from their entry into
+ * one of the queues until they leave the network. Elements are identified by identity (which is why queues that
+ * spill to disk, where numbers and strings are read back as new objects, cannot be part of the network); the tracker keeps the time
+ * of entry of every element currently in the network (an element that is in the network several times at once
+ * keeps its earliest time of entry until all copies have left). Elements that were already queued when tracking
+ * started are not counted.
+ * <p>
+ * When the world is exported, the tracker is written once (see {@link #exportState(StringBuilder)}) and each queue
+ * of the network refers to it by id. Distinct elements that are exported as the same text (e.g. equal numbers) cannot 
+ * be told apart when they are read back, so they may swap their times of entry.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class SojournTracker {
+
+	/** Id used to refer to this tracker when exporting the world (-1 if it has not been registered yet). */
+	long id = -1;
+	// time of entry and number of copies of the elements currently in the network
+	IdentityHashMap<Object, double[]> entries;
+	// statistics of the elements that have left the network
+	long count;
+	double total;
+	double max;
+	double min;
+	// while a world is imported: the tracked elements by their exported text, once per copy, so that the elements of
+	// the queues of the network are read back as the very objects that are tracked (null otherwise)
+	HashMap<String, ArrayDeque<Object>> unclaimed;
+
+	SojournTracker() {
+		this.entries = new IdentityHashMap<Object, double[]>();
+		this.count = 0;
+		this.total = 0;
+		this.max = 0;
+		this.min = Double.MAX_VALUE;
+	}
+
+	void enter(Object elem, double time) {
+		double[] entry = this.entries.get(elem);
+		if (entry == null) {
+			this.entries.put(elem, new double[]{time, 1});
+		}
+		else {
+			entry[1]++;
+		}
+	}
+
+	void leave(Object elem, double time) {
+		double[] entry = this.entries.get(elem);
+		if (entry == null) {
+			// entered before tracking started
+			return;
+		}
+		if (--entry[1] == 0) {
+			this.entries.remove(elem);
+		}
+		double sojourn = time - entry[0];
+		this.count++;
+		this.total += sojourn;
+		if (sojourn > this.max) this.max = sojourn;
+		if (sojourn < this.min) this.min = sojourn;
+	}
+
+	double getMean() {
+		if (this.count == 0) return 0.0;
+		return this.total / this.count;
+	}
+
+	/** Appends the state of this tracker to the given buffer: a single line with its id, the statistics and the time
+	 * of entry and number of copies of each element currently in the network (written as a reference).
+	 */
+	void exportState(StringBuilder buf) {
+		buf.append("\"sojourn\",").append(this.id).append(',').append(this.count).append(',').append(this.total)
+		   .append(',').append(this.max).append(',').append(this.min);
+		for (Map.Entry<Object, double[]> e : this.entries.entrySet()) {
+			buf.append(',');
+			QueueState.exportElement(buf, e.getKey());
+			buf.append(',').append(e.getValue()[0]).append(',').append((long)e.getValue()[1]);
+		}
+		buf.append('\n');
+	}
+
+	/** Restores the state of this tracker from the line written by {@link #exportState(StringBuilder)}, and keeps the
+	 * elements read back to be claimed by the queues of the network (see {@link #claim(String)}).
+	 */
+	void importState(String[] line, ExtensionManager reader) throws ExtensionException {
+		this.count = Long.parseLong(line[2]);
+		this.total = Double.parseDouble(line[3]);
+		this.max = Double.parseDouble(line[4]);
+		this.min = Double.parseDouble(line[5]);
+		this.entries.clear();
+		this.unclaimed = new HashMap<String, ArrayDeque<Object>>();
+		for (int k = 6; k + 2 < line.length; k += 3) {
+			Object elem = QueueState.importObject(line[k], reader);
+			long copies = Long.parseLong(line[k + 2]);
+			this.entries.put(elem, new double[]{Double.parseDouble(line[k + 1]), copies});
+			ArrayDeque<Object> objects = this.unclaimed.get(line[k]);
+			if (objects == null) {
+				objects = new ArrayDeque<Object>();
+				this.unclaimed.put(line[k], objects);
+			}
+			for (long n = 0; n < copies; n++) {
+				objects.add(elem);
+			}
+		}
+	}
+
+	/** Returns the tracked element that was exported as the given text and has not been claimed by a queue of the
+	 * network yet (while a world is imported), or null if there is none. The element is claimed (once per copy) 
+	 * unless only a reference to it is read back, e.g. by the handle of an element.
+	 */
+	Object claim(String text, boolean reference) {
+		if (this.unclaimed == null) {
+			return null;
+		}
+		ArrayDeque<Object> objects = this.unclaimed.get(text);
+		if (objects == null) {
+			return null;
+		}
+		return reference ? objects.peek() : objects.poll();
+	}
+
+}
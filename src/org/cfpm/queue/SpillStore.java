@@ -0,0 +1,410 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.Turtle;
+import org.nlogo.api.World;
+import org.nlogo.core.Nobody$;
+
+/** Backing store of a FIFO queue that spills to disk. Only the head segment (the elements that leave the queue
+ * next) and the tail segment (the elements inserted last) are kept on the heap, each holding at most
+ * {@link #segmentLength} elements; whenever the tail segment is full, it is written to a file in a temporary
+ * directory. When the head segment runs empty, it is refilled from the oldest file (which is deleted as soon as it
+ * has been read back), or from the tail segment if nothing has been spilled. The files that are left when the
+ * queue is discarded are deleted by {@link #dispose()}, which is called for all stores when the world is cleared.
+ * <p>
+ * Elements are written in a compact binary encoding, so only numbers, strings, booleans, nobody and turtles can
+ * be stored; turtles are written as their who number and resolved back to the turtle (or nobody, if it has died
+ * in the meantime) when they are read.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class SpillStore {
+
+	// tags of the encoded elements
+	final static byte NUMBER = 0;
+	final static byte STRING = 1;
+	final static byte TURTLE = 2;
+	final static byte TRUE = 3;
+	final static byte FALSE = 4;
+	final static byte NOBODY = 5;
+
+	/** A segment of elements that has been written to a file. */
+	static class Segment {
+		final Path file;
+		final int count;
+
+		Segment(Path file, int count) {
+			this.file = file;
+			this.count = count;
+		}
+	}
+
+	// stores that have a directory of segment files (disposed of when the world is cleared or the extension is unloaded)
+	private static Set<SpillStore> openStores = new HashSet<SpillStore>();
+
+	int segmentLength;
+	int size;
+	// the head segment holds the first elements of the queue at indices headPos .. headEnd-1
+	Object[] headElems;
+	double[] headTimes;
+	int headPos;
+	int headEnd;
+	// spilled segments, oldest first
+	ArrayDeque<Segment> segments;
+	// the tail segment holds the last elements of the queue at indices 0 .. tailCount-1
+	Object[] tailElems;
+	double[] tailTimes;
+	int tailCount;
+	// temporary directory for the segment files (created on demand)
+	Path directory;
+	long nextSegmentNo;
+	// buffer for encoding and decoding segments (grows as needed)
+	ByteBuffer buffer;
+	// the world of the stored turtles, used to resolve their who numbers
+	World world;
+
+	SpillStore(int segmentLength) {
+		this.segmentLength = segmentLength;
+		this.size = 0;
+		this.headElems = new Object[segmentLength];
+		this.headTimes = new double[segmentLength];
+		this.headPos = 0;
+		this.headEnd = 0;
+		this.segments = new ArrayDeque<Segment>();
+		this.tailElems = new Object[segmentLength];
+		this.tailTimes = new double[segmentLength];
+		this.tailCount = 0;
+		this.nextSegmentNo = 0;
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	/** Returns the number of elements currently written to files.
+	 */
+	long getSpilledCount() {
+		return (long)this.size - (this.headEnd - this.headPos) - this.tailCount;
+	}
+
+	/** Returns true if the given object can be stored, i.e. written in the compact encoding.
+	 */
+	static boolean canStore(Object elem) {
+		return elem instanceof Double || elem instanceof String || elem instanceof Boolean || elem instanceof Turtle
+				|| elem == Nobody$.MODULE$;
+	}
+
+	/** Throws an exception if the given object cannot be stored.
+	 */
+	static void check(Object elem) throws ExtensionException {
+		if (! canStore(elem)) {
+			throw new ExtensionException("cannot spill " + Dump.logoObject(elem) +
+					" to disk: only numbers, strings, booleans and turtles can be stored in a spilling queue");
+		}
+	}
+
+	/** Appends the given element, inserted at the given time. If the tail segment is full, it is written to a file first.
+	 */
+	void add(Object elem, double time) throws ExtensionException {
+		if (this.headEnd < this.segmentLength && this.segments.isEmpty() && this.tailCount == 0) {
+			// nothing behind the head segment yet, so the element can be appended to it
+			this.headElems[this.headEnd] = elem;
+			this.headTimes[this.headEnd] = time;
+			this.headEnd++;
+		}
+		else {
+			if (this.tailCount == this.segmentLength) {
+				spillTail();
+			}
+			this.tailElems[this.tailCount] = elem;
+			this.tailTimes[this.tailCount] = time;
+			this.tailCount++;
+		}
+		if (elem instanceof Turtle && this.world == null) {
+			this.world = ((Turtle)elem).world();
+		}
+		this.size++;
+	}
+
+	/** Returns the insertion time of the first element. Must not be called on an empty store.
+	 */
+	double firstTime() throws ExtensionException {
+		if (this.headPos == this.headEnd) {
+			fillHead();
+		}
+		return this.headTimes[this.headPos];
+	}
+
+	/** Returns the first element without removing it. Must not be called on an empty store.
+	 */
+	Object first() throws ExtensionException {
+		if (this.headPos == this.headEnd) {
+			fillHead();
+		}
+		return this.headElems[this.headPos];
+	}
+
+	/** Removes the first element and returns it. Must not be called on an empty store.
+	 */
+	Object removeFirst() throws ExtensionException {
+		if (this.headPos == this.headEnd) {
+			fillHead();
+		}
+		Object elem = this.headElems[this.headPos];
+		this.headElems[this.headPos] = null;
+		this.headPos++;
+		this.size--;
+		if (this.size == 0) {
+			// start the head segment afresh
+			this.headPos = 0;
+			this.headEnd = 0;
+		}
+		return elem;
+	}
+
+	/** Returns views of all elements in the order of removal (reading all segment files).
+	 */
+	QElem[] toArray() throws ExtensionException {
+		return toArray(0, this.size);
+	}
+
+	/** Returns views of the elements at the positions from (inclusive) to to (exclusive) in the order of removal,
+	 * reading only the segment files that hold some of them.
+	 */
+	QElem[] toArray(int from, int to) throws ExtensionException {
+		QElem[] result = new QElem[to - from];
+		int n = 0;
+		// position of the first element of the current part
+		int start = 0;
+		for (int i = Math.max(from, start); i < Math.min(to, start + this.headEnd - this.headPos); i++) {
+			result[n++] = new QElem(this.headElems[this.headPos + i - start], this.headTimes[this.headPos + i - start]);
+		}
+		start += this.headEnd - this.headPos;
+		Object[] elems = null;
+		double[] times = null;
+		for (Segment segment : this.segments) {
+			if (start >= to) {
+				break;
+			}
+			if (start + segment.count > from) {
+				if (elems == null) {
+					elems = new Object[this.segmentLength];
+					times = new double[this.segmentLength];
+				}
+				read(segment, elems, times);
+				for (int i = Math.max(from, start); i < Math.min(to, start + segment.count); i++) {
+					result[n++] = new QElem(elems[i - start], times[i - start]);
+				}
+			}
+			start += segment.count;
+		}
+		for (int i = Math.max(from, start); i < Math.min(to, start + this.tailCount); i++) {
+			result[n++] = new QElem(this.tailElems[i - start], this.tailTimes[i - start]);
+		}
+		return result;
+	}
+
+	/** Deletes all segment files. The store must not be used afterwards (reading the deleted segments fails).
+	 */
+	void dispose() {
+		synchronized (SpillStore.class) {
+			openStores.remove(this);
+		}
+		for (Segment segment : this.segments) {
+			delete(segment.file);
+		}
+		if (this.directory != null) {
+			delete(this.directory);
+			this.directory = null;
+		}
+	}
+
+	/** Deletes the segment files of all stores.
+	 */
+	static void disposeAll() {
+		ArrayList<SpillStore> toDispose;
+		synchronized (SpillStore.class) {
+			toDispose = new ArrayList<SpillStore>(openStores);
+		}
+		for (SpillStore store : toDispose) {
+			store.dispose();
+		}
+	}
+
+	/** Refills the (empty) head segment from the oldest segment file or, if there is none, from the tail segment.
+	 */
+	private void fillHead() throws ExtensionException {
+		Segment segment = this.segments.peekFirst();
+		if (segment != null) {
+			read(segment, this.headElems, this.headTimes);
+			this.segments.removeFirst();
+			delete(segment.file);
+			this.headEnd = segment.count;
+		}
+		else {
+			// swap head and tail segments
+			Object[] elems = this.headElems;
+			double[] times = this.headTimes;
+			this.headElems = this.tailElems;
+			this.headTimes = this.tailTimes;
+			this.tailElems = elems;
+			this.tailTimes = times;
+			this.headEnd = this.tailCount;
+			this.tailCount = 0;
+		}
+		this.headPos = 0;
+	}
+
+	/** Writes the (full) tail segment to a new file and empties it.
+	 */
+	private void spillTail() throws ExtensionException {
+		ByteBuffer buf = encode(this.tailElems, this.tailTimes, this.tailCount);
+		try {
+			if (this.directory == null) {
+				this.directory = Files.createTempDirectory("netlogo-queue");
+				synchronized (SpillStore.class) {
+					openStores.add(this);
+				}
+			}
+			Path file = this.directory.resolve("segment" + this.nextSegmentNo++);
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+				while (buf.hasRemaining()) {
+					channel.write(buf);
+				}
+			}
+			this.segments.addLast(new Segment(file, this.tailCount));
+		}
+		catch (IOException e) {
+			throw new ExtensionException("cannot spill queue to disk: " + e.getMessage());
+		}
+		Arrays.fill(this.tailElems, 0, this.tailCount, null);
+		this.tailCount = 0;
+	}
+
+	private ByteBuffer encode(Object[] elems, double[] times, int count) {
+		if (this.buffer == null) {
+			// room for count numbers
+			this.buffer = ByteBuffer.allocate(17 * this.segmentLength);
+		}
+		this.buffer.clear();
+		for (int i = 0; i < count; i++) {
+			Object elem = elems[i];
+			ensureRemaining(17);
+			this.buffer.putDouble(times[i]);
+			if (elem instanceof Double) {
+				this.buffer.put(NUMBER).putDouble(((Double)elem).doubleValue());
+			}
+			else if (elem instanceof String) {
+				byte[] bytes = ((String)elem).getBytes(StandardCharsets.UTF_8);
+				ensureRemaining(5 + bytes.length);
+				this.buffer.put(STRING).putInt(bytes.length).put(bytes);
+			}
+			else if (elem instanceof Turtle) {
+				// a dead turtle has id -1
+				long who = ((Turtle)elem).id();
+				if (who < 0) {
+					this.buffer.put(NOBODY);
+				}
+				else {
+					this.buffer.put(TURTLE).putLong(who);
+				}
+			}
+			else if (elem instanceof Boolean) {
+				this.buffer.put(((Boolean)elem).booleanValue() ? TRUE : FALSE);
+			}
+			else {
+				this.buffer.put(NOBODY);
+			}
+		}
+		this.buffer.flip();
+		return this.buffer;
+	}
+
+	/** Grows the encoding buffer if it has less than the given number of bytes remaining.
+	 */
+	private void ensureRemaining(int numBytes) {
+		if (this.buffer.remaining() < numBytes) {
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(2 * this.buffer.capacity(), this.buffer.position() + numBytes));
+			this.buffer.flip();
+			bigger.put(this.buffer);
+			this.buffer = bigger;
+		}
+	}
+
+	/** Reads the elements of the given segment into the given arrays. The file is read into the buffer rather than
+	 * mapped, so it can be deleted right away (a mapped file cannot be deleted on Windows).
+	 */
+	private void read(Segment segment, Object[] elems, double[] times) throws ExtensionException {
+		ByteBuffer buf;
+		try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+			int numBytes = (int)channel.size();
+			if (this.buffer == null || this.buffer.capacity() < numBytes) {
+				this.buffer = ByteBuffer.allocate(numBytes);
+			}
+			buf = this.buffer;
+			buf.clear().limit(numBytes);
+			while (buf.hasRemaining() && channel.read(buf) >= 0) {
+				// keep reading
+			}
+			buf.flip();
+		}
+		catch (IOException e) {
+			throw new ExtensionException("cannot read spilled queue segment: " + e.getMessage());
+		}
+		for (int i = 0; i < segment.count; i++) {
+			times[i] = buf.getDouble();
+			byte tag = buf.get();
+			switch (tag) {
+			case NUMBER:
+				elems[i] = Double.valueOf(buf.getDouble());
+				break;
+			case STRING:
+				byte[] bytes = new byte[buf.getInt()];
+				buf.get(bytes);
+				elems[i] = new String(bytes, StandardCharsets.UTF_8);
+				break;
+			case TURTLE:
+				long who = buf.getLong();
+				Turtle turtle = (this.world == null) ? null : this.world.getTurtle(who);
+				elems[i] = (turtle == null) ? Nobody$.MODULE$ : turtle;
+				break;
+			case TRUE:
+				elems[i] = Boolean.TRUE;
+				break;
+			case FALSE:
+				elems[i] = Boolean.FALSE;
+				break;
+			default:
+				elems[i] = Nobody$.MODULE$;
+			}
+		}
+	}
+
+	private static void delete(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		}
+		catch (IOException e) {
+			// e.g. a directory that is not empty after all: nothing else to be done about it
+		}
+	}
+
+}
@@ -0,0 +1,174 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.nlogo.api.Agent;
+import org.nlogo.api.ExtensionException;
+
+/** An append-only binary trace of the arrivals and departures of a queue, written to a file through a memory
+ * mapping. The file starts with a header of {@link #HEADER_SIZE} bytes (the magic bytes "NLQTRACE", the format
+ * version, the record size, the number of records, which is filled in when the trace is closed, and the state of the
+ * queue when the trace was started: its length (int), time of last change (double) and the sum of the insertion
+ * times of its elements (double), so a reader can follow the elements that were already waiting), followed by
+ * records of {@link #RECORD_SIZE} bytes each: the kind of event (int), the length of the queue after the event (int),
+ * the time (double), the id of the element (long) and its time in the queue (double, 0 for arrivals).
+ * <p>
+ * The file is mapped in regions of {@link #REGION_SIZE} bytes, so appending a record only copies 32 bytes into the
+ * page cache, and the operating system writes the pages out in the background; the next region is mapped when one
+ * is full. A trace that is not closed properly can still be read up to the first record of kind 0 (the unused rest
+ * of the last region is filled with zeros).
+ *
+ * @author Ruth Meyer
+ *
+ */
+class TraceFile {
+
+	// kinds of events
+	final static int ARRIVAL = 1;
+	final static int DEPARTURE = 2;
+	final static int RENEGE = 3;
+	final static int DROP = 4;
+
+	final static String MAGIC = "NLQTRACE";
+	final static int VERSION = 1;
+	final static int HEADER_SIZE = 64;
+	final static int RECORD_SIZE = 32;
+	final static int REGION_SIZE = RECORD_SIZE << 16;
+
+	// traces that are currently open (closed when the world is cleared or the extension is unloaded)
+	private static Set<TraceFile> openFiles = new HashSet<TraceFile>();
+
+	Path path;
+	FileChannel channel;
+	// the region that is currently written to, and its position in the file
+	MappedByteBuffer region;
+	long regionStart;
+	long numRecords;
+
+	/** Creates the given file (replacing an existing file) and starts a trace in it of a queue with the given length,
+	 * time of last change and sum of the insertion times of its elements.
+	 */
+	TraceFile(Path path, int length, double time, double sumOfTimes) throws ExtensionException {
+		this.path = path;
+		try {
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.regionStart = 0;
+			this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+		}
+		catch (IOException e) {
+			throw new ExtensionException("cannot open trace file " + path + ": " + e.getMessage());
+		}
+		this.region.put(MAGIC.getBytes(StandardCharsets.US_ASCII)).putInt(VERSION).putInt(RECORD_SIZE).putLong(0L);
+		this.region.putInt(length).putInt(0).putDouble(time).putDouble(sumOfTimes);
+		this.region.position(HEADER_SIZE);
+		this.numRecords = 0;
+		synchronized (TraceFile.class) {
+			openFiles.add(this);
+		}
+	}
+
+	/** Appends a record of the given kind of event of the given element at the specified time (unless the trace has
+	 * been closed).
+	 */
+	void append(int kind, double time, Object elem, int length, double timeInQueue) throws ExtensionException {
+		if (this.region == null) {
+			return;
+		}
+		if (! this.region.hasRemaining()) {
+			nextRegion();
+		}
+		this.region.putInt(kind).putInt(length).putDouble(time).putLong(idOf(elem)).putDouble(timeInQueue);
+		this.numRecords++;
+	}
+
+	/** Returns the id of the given element in the trace: the who number of a turtle (or the id of any other agent),
+	 * the integer part of a number, and the identity hash code of any other object (which tells the elements of one
+	 * run apart, but differs between runs).
+	 */
+	static long idOf(Object elem) {
+		if (elem instanceof Agent) {
+			return ((Agent)elem).id();
+		}
+		if (elem instanceof Double) {
+			return (long)((Double)elem).doubleValue();
+		}
+		return System.identityHashCode(elem);
+	}
+
+	private void nextRegion() throws ExtensionException {
+		try {
+			this.regionStart += REGION_SIZE;
+			this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, this.regionStart, REGION_SIZE);
+		}
+		catch (IOException e) {
+			throw new ExtensionException("cannot write trace file " + this.path + ": " + e.getMessage());
+		}
+	}
+
+	/** Writes the number of records into the header, cuts the file to its records and closes it.
+	 */
+	void close() throws ExtensionException {
+		synchronized (TraceFile.class) {
+			openFiles.remove(this);
+		}
+		if (this.channel == null) {
+			return;
+		}
+		try {
+			ByteBuffer count = ByteBuffer.allocate(8);
+			count.putLong(this.numRecords).flip();
+			this.channel.write(count, MAGIC.length() + 8);
+			try {
+				this.channel.truncate(HEADER_SIZE + this.numRecords * RECORD_SIZE);
+			}
+			catch (IOException e) {
+				// e.g. still mapped on Windows: the file keeps its zeros at the end, which readers skip
+			}
+			this.channel.close();
+		}
+		catch (IOException e) {
+			throw new ExtensionException("cannot close trace file " + this.path + ": " + e.getMessage());
+		}
+		finally {
+			this.region = null;
+			this.channel = null;
+		}
+	}
+
+	/** Closes all traces that are still open (reporting the first error, if any, once all have been closed).
+	 */
+	static void closeAll() throws ExtensionException {
+		ArrayList<TraceFile> toClose;
+		synchronized (TraceFile.class) {
+			toClose = new ArrayList<TraceFile>(openFiles);
+		}
+		ExtensionException error = null;
+		for (TraceFile trace : toClose) {
+			try {
+				trace.close();
+			}
+			catch (ExtensionException e) {
+				if (error == null) {
+					error = e;
+				}
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+}
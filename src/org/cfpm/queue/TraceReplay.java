@@ -0,0 +1,271 @@
+/**
+ *
+ */
+package org.cfpm.queue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/** Recomputes the statistics of a queue from a trace written by queue:trace-start (see {@link TraceFile}), without
+ * NetLogo (only compile-time constants of {@link TraceFile} and {@link Queue} are used, so neither class is loaded).
+ * The trace is read through memory mappings and its events are fed to {@link QueueStats}, the statistics a
+ * {@link Queue} keeps, so the results agree with what get-stats would have reported. Each record is processed in
+ * O(1) without allocating anything.
+ * <p>
+ * Usage: <code>java -cp queue.jar org.cfpm.queue.TraceReplay trace-file [options]</code>, with the options
+ * <ul>
+ * <li><code>-warmup t</code>: discard everything before time t, as if reset-stats had been called at t</li>
+ * <li><code>-until t</code>: ignore everything after time t</li>
+ * <li><code>-window w</code>: also report the statistics of each successive window of width w</li>
+ * <li><code>-percentiles p1,p2,...</code>: percentiles of wait time and length to report (default 50,90,99)</li>
+ * <li><code>-out file</code>: write the CSV to the given file instead of the standard output</li>
+ * </ul>
+ * The output has a header line and one line per window (if any), followed by a line for the whole run.
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class TraceReplay {
+
+	/** Size of the mapped parts of the trace file (a multiple of the record size). */
+	final static int CHUNK_SIZE = TraceFile.RECORD_SIZE << 20;
+
+	/** Feeds the given statistics the event of the given kind at the specified time, after which the queue has the
+	 * given length, of an element that has been in the queue for the given time.
+	 */
+	static void process(QueueStats stats, int kind, double time, int length, double timeInQueue) {
+		switch (kind) {
+		case TraceFile.ARRIVAL:
+			stats.arrive(time);
+			break;
+		case TraceFile.DEPARTURE:
+			stats.depart(time - timeInQueue, time);
+			break;
+		case TraceFile.RENEGE:
+			stats.renege(time - timeInQueue, time);
+			break;
+		default:
+			if (length == stats.length) {
+				// an arrival that was not admitted
+				stats.block(time);
+			}
+			else {
+				stats.drop(time - timeInQueue, time);
+			}
+		}
+	}
+
+	/** Writes the given statistics as a line of the CSV output (see {@link #writeHeader(Writer, double[])}).
+	 */
+	static void write(Writer out, QueueStats stats, double[] percentiles) throws IOException {
+		long numDepartures = stats.waitTimes.getTotalCount();
+		double duration = stats.timeOfLastChange - stats.initTime;
+		StringBuilder line = new StringBuilder();
+		line.append(stats.initTime).append(',').append(stats.timeOfLastChange)
+			.append(',').append(stats.getMeanSize()).append(',').append(stats.maxSize)
+			.append(',').append(stats.getMeanWaitTime()).append(',').append(stats.maxWaitTime)
+			.append(',').append((numDepartures == 0) ? 0.0 : stats.minWaitTime)
+			.append(',').append(stats.getLossStats()[0]).append(',').append(stats.numBlocked).append(',').append(stats.numDropped)
+			.append(',').append(stats.numInserts).append(',').append(numDepartures).append(',').append(stats.numReneged)
+			.append(',').append((duration > 0) ? numDepartures / duration : 0.0);
+		for (double p : percentiles) {
+			line.append(',').append(stats.waitTimes.getPercentile(p));
+		}
+		for (double p : percentiles) {
+			line.append(',').append(stats.getLengthPercentile(p));
+		}
+		out.write(line.append('\n').toString());
+	}
+
+	double warmup = Double.NEGATIVE_INFINITY;
+	double until = Double.POSITIVE_INFINITY;
+	double window = 0;
+	double[] percentiles = {50, 90, 99};
+
+	/** Writes the header line of the CSV output.
+	 */
+	static void writeHeader(Writer out, double[] percentiles) throws IOException {
+		StringBuilder line = new StringBuilder("from,to,mean-length,max-length,mean-wt,max-wt,min-wt,blocking,blocked,"
+				+ "dropped,arrivals,departures,reneged,throughput");
+		for (double p : percentiles) {
+			line.append(",wt-p").append(format(p));
+		}
+		for (double p : percentiles) {
+			line.append(",length-p").append(format(p));
+		}
+		out.write(line.append('\n').toString());
+	}
+
+	private static String format(double p) {
+		return (p == Math.rint(p)) ? Long.toString((long)p) : Double.toString(p);
+	}
+
+	/** Replays the given trace file and writes the statistics (per window, if set, and of the whole run) as CSV.
+	 * Returns the number of records processed.
+	 */
+	long replay(String file, Writer out) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < TraceFile.HEADER_SIZE) {
+				throw new IOException(file + " is not a queue trace");
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TraceFile.HEADER_SIZE);
+			byte[] magic = new byte[TraceFile.MAGIC.length()];
+			header.get(magic);
+			if (! new String(magic, StandardCharsets.US_ASCII).equals(TraceFile.MAGIC) || header.getInt() != TraceFile.VERSION
+					|| header.getInt() != TraceFile.RECORD_SIZE) {
+				throw new IOException(file + " is not a queue trace of version " + TraceFile.VERSION);
+			}
+			long numRecords = header.getLong();
+			int initialLength = header.getInt();
+			header.getInt();
+			double startTime = header.getDouble();
+			double sumOfTimes = header.getDouble();
+			long available = (size - TraceFile.HEADER_SIZE) / TraceFile.RECORD_SIZE;
+			if (numRecords == 0 || numRecords > available) {
+				// not closed properly: read up to the first empty record
+				numRecords = available;
+			}
+			QueueStats total = new QueueStats(initialLength, startTime, sumOfTimes);
+			QueueStats current = (this.window > 0) ? new QueueStats(initialLength, startTime, sumOfTimes) : null;
+			boolean started = ! (this.warmup > startTime);
+			double from = started ? startTime : this.warmup;
+			long windowNo = 1;
+			double windowEnd = from + this.window;
+			writeHeader(out, this.percentiles);
+			long n = 0;
+			long position = TraceFile.HEADER_SIZE;
+			long end = TraceFile.HEADER_SIZE + numRecords * TraceFile.RECORD_SIZE;
+			double lastTime = startTime;
+			read:
+			while (position < end) {
+				int chunk = (int)Math.min(CHUNK_SIZE, end - position);
+				ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position, chunk);
+				for (int offset = 0; offset < chunk; offset += TraceFile.RECORD_SIZE) {
+					int kind = buf.getInt(offset);
+					if (kind == 0) {
+						break read;
+					}
+					double time = buf.getDouble(offset + 8);
+					if (time > this.until) {
+						break read;
+					}
+					if (! started && time >= from) {
+						total.reset(from);
+						if (current != null) {
+							current.reset(from);
+						}
+						started = true;
+					}
+					int length = buf.getInt(offset + 4);
+					double timeInQueue = buf.getDouble(offset + 24);
+					if (current != null) {
+						while (started && time >= windowEnd) {
+							current.advanceTime(windowEnd);
+							write(out, current, this.percentiles);
+							current.reset(windowEnd);
+							windowNo++;
+							windowEnd = from + windowNo * this.window;
+						}
+						process(current, kind, time, length, timeInQueue);
+					}
+					process(total, kind, time, length, timeInQueue);
+					lastTime = time;
+					n++;
+				}
+				position += chunk;
+			}
+			double endTime = (this.until < Double.POSITIVE_INFINITY) ? this.until : lastTime;
+			if (! started) {
+				total.reset(from);
+				if (current != null) {
+					current.reset(from);
+				}
+			}
+			endTime = Math.max(endTime, from);
+			if (current != null) {
+				while (endTime > windowEnd) {
+					current.advanceTime(windowEnd);
+					write(out, current, this.percentiles);
+					current.reset(windowEnd);
+					windowNo++;
+					windowEnd = from + windowNo * this.window;
+				}
+				// the last window ends with the run
+				current.advanceTime(endTime);
+				write(out, current, this.percentiles);
+			}
+			total.advanceTime(endTime);
+			write(out, total, this.percentiles);
+			return n;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		TraceReplay replay = new TraceReplay();
+		String file = null;
+		String outFile = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "-warmup":
+					replay.warmup = Double.parseDouble(args[++i]);
+					break;
+				case "-until":
+					replay.until = Double.parseDouble(args[++i]);
+					break;
+				case "-window":
+					replay.window = Double.parseDouble(args[++i]);
+					break;
+				case "-percentiles":
+					String[] values = args[++i].split(",");
+					replay.percentiles = new double[values.length];
+					for (int k = 0; k < values.length; k++) {
+						replay.percentiles[k] = Double.parseDouble(values[k].trim());
+					}
+					break;
+				case "-out":
+					outFile = args[++i];
+					break;
+				default:
+					if (file != null) {
+						throw new IllegalArgumentException(args[i]);
+					}
+					file = args[i];
+				}
+			}
+			if (file == null) {
+				throw new IllegalArgumentException("no trace file");
+			}
+		}
+		catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			System.err.println("usage: java org.cfpm.queue.TraceReplay trace-file [-warmup time] [-until time] "
+					+ "[-window width] [-percentiles p1,p2,...] [-out file]");
+			System.exit(1);
+		}
+		long start = System.nanoTime();
+		Writer out = new BufferedWriter((outFile == null) ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+				: Files.newBufferedWriter(Paths.get(outFile), StandardCharsets.UTF_8));
+		long n;
+		try {
+			n = replay.replay(file, out);
+		}
+		finally {
+			out.flush();
+			if (outFile != null) {
+				out.close();
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.println(n + " events in " + String.format("%.3f", seconds) + " s");
+	}
+
+}